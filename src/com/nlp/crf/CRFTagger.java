@@ -1,14 +1,45 @@
 package com.nlp.crf;
 
-import gnu.trove.TObjectIntHashMap;
+import org.apache.commons.io.input.CountingInputStream;
 
 import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.StringTokenizer;
 import java.util.zip.GZIPInputStream;
 
+/**
+ * CRF++模型的解码器，支持两种模型格式
+ * <ul>
+ * <li>CRF++ crf_learn -t 生成的文本模型，可以是gzip压缩的</li>
+ * <li>{@link #writeBinary(File)}生成的二进制模型，加载的时候直接映射文件</li>
+ * </ul>
+ * 二进制模型的布局如下，所有数值都是big-endian
+ * <pre>
+ * int    magic "CRFB"
+ * int    版本号
+ * int    xsize, ysize, maxId, stateStartIndex
+ * int    权重的精度，{@link Weights.Precision}的序号（版本1没有这一项，都是DOUBLE）
+ * int    量化比例的个数n，浮点精度是0，整数精度是ysize + 1（版本1没有这一项，版本2总是1）
+ * double[n] 量化比例，前ysize个是每个标签的状态特征的，最后一个是转移矩阵的
+ * int    标签个数，然后每个标签是 int长度 + UTF-8字节
+ * int    模板个数，然后每个模板是 int长度 + UTF-8字节
+ * int    特征字典的容量capacity, 特征个数
+ * 按8字节对齐
+ * long[capacity]  特征字典的key
+ * int[capacity]   特征字典的value（特征id），-1表示空槽位
+ * 按8字节对齐
+ * maxId个权重，按精度分别是double/float/short/byte
+ * </pre>
+ */
 public final class CRFTagger implements Tagger {
+	// 二进制模型文件头 "CRFB"
+	public static final int BINARY_MAGIC = 0x43524642;
+	public static final int BINARY_VERSION = 3;
+
 	public static final String[] BOS = {
 		"_B-1", "_B-2", "_B-3", "_B-4"
 	};
@@ -21,10 +52,25 @@ public final class CRFTagger implements Tagger {
 	public int ysize;
 	public String[] y;
 	public int maxId;
-	public double[] alpha;
+	public Weights alpha;
+	// 文本模型的DOUBLE权重，解码的时候直接读数组，映射文件和量化的模型是null
+	private double[] alphaArray;
 	public int stateStartIndex;
 	
-	private TObjectIntHashMap<String> dict;
+	private FeatureIndex dict;
+	// 编译好的模板，和templates一一对应
+	private FeatureTemplate[] compiledTemplates;
+	// 转移矩阵，从alpha[stateStartIndex..]复制出来，下标是 from * ysize + to
+	private double[] transitions;
+	// 每个标签的角色，和y一一对应
+	private int[] roles;
+	// 每个线程一份解码空间
+	private final ThreadLocal<DecodeWorkspace> workspaces = new ThreadLocal<DecodeWorkspace>() {
+		@Override
+		protected DecodeWorkspace initialValue() {
+			return new DecodeWorkspace();
+		}
+	};
 	
 	public CRFTagger(File textModelFile, boolean isGziped, String charset) throws IOException {
 		BufferedReader br = null;
@@ -79,6 +125,7 @@ public final class CRFTagger implements Tagger {
 			}
 			y = yl.toArray(new String[yl.size()]);
 			ysize = y.length;
+			roles = roles(y);
 			
 			// template
 			List<String> tmpls = new ArrayList<String>();
@@ -92,9 +139,14 @@ public final class CRFTagger implements Tagger {
 				}
 			}
 			templates = tmpls.toArray(new String[tmpls.size()]);
+			compiledTemplates = new FeatureTemplate[templates.length];
+			for (int t = 0; t < templates.length; t++) {
+				compiledTemplates[t] = FeatureTemplate.compile(templates[t], xsize);
+			}
 			
 			// dict
-			dict = new TObjectIntHashMap<String>();
+			// maxId是特征数量的上界，每个特征至少占ysize个权重
+			dict = new FeatureIndex(maxId / Math.max(ysize, 1));
 			
 			while ((line = br.readLine()) != null) {
 				if (line.trim().length() == 0) {
@@ -106,106 +158,298 @@ public final class CRFTagger implements Tagger {
 				if (token.equals("B")) {
 					stateStartIndex = i;
 				}
-				dict.put(token, i + 1); // // Trove中的map在key不存在时返回0而不是-1
+				dict.put(token, i);
 			}
 			
 			// alpha
-			alpha = new double[maxId];
+			double[] weights = new double[maxId];
 			int i = 0;
 			while ((line = br.readLine()) != null) {
 				if (line.trim().length() == 0) {
 					break;
 				}
-				alpha[i++] = Double.parseDouble(line);
+				weights[i++] = Double.parseDouble(line);
 			}
+			alpha = Weights.wrap(weights);
+			alphaArray = alpha.array();
+			transitions = transitions();
 		} finally {
 			br.close();
 		}
 	}
-	
-	private String applyRule(String template, int pos, List<String[]> sentence) {
-		StringBuilder sb = new StringBuilder();
-		for (int i = 0; i < template.length(); i++) {
-			char c = template.charAt(i);
-			switch (c) {
-			case '%':
-				i++;
-				if (i >= template.length()) {
-					throw new IllegalStateException("wrong template format: " + template);
+
+	/**
+	 * 加载二进制模型，特征字典和权重直接映射到内存，
+	 * 多个进程加载同一个模型的时候共享操作系统的page cache
+	 * @param binaryModelFile 二进制模型文件
+	 */
+	private CRFTagger(File binaryModelFile) throws IOException {
+		CountingInputStream counter = new CountingInputStream(
+				new BufferedInputStream(new FileInputStream(binaryModelFile)));
+		DataInputStream in = new DataInputStream(counter);
+		int capacity, featureSize;
+		Weights.Precision precision = Weights.Precision.DOUBLE;
+		Weights.Scales scales = null;
+		try {
+			if (in.readInt() != BINARY_MAGIC) {
+				throw new IllegalStateException("wrong format: " + binaryModelFile);
+			}
+			int version = in.readInt();
+			if (version < 1 || version > BINARY_VERSION) {
+				throw new IllegalStateException("unsupported binary model version: " + version);
+			}
+			xsize = in.readInt();
+			ysize = in.readInt();
+			maxId = in.readInt();
+			stateStartIndex = in.readInt();
+			if (version >= 2) {
+				int ordinal = in.readInt();
+				if (ordinal < 0 || ordinal >= Weights.Precision.values().length) {
+					throw new IOException("unknown weight precision " + ordinal + ": " + binaryModelFile);
 				}
-				char nextChar = template.charAt(i);
-				switch (nextChar) {
-				case 'x':
-					i++;
-					i = getIndex(sb, template, i, pos, sentence);
-					break;
-				default:
-					throw new IllegalStateException("wrong template format: " + template);
+				precision = Weights.Precision.values()[ordinal];
+			}
+			double[] scaleValues = new double[0];
+			if (version == 2) {
+				// 版本2所有权重共用一个比例
+				scaleValues = new double[ysize + 1];
+				Arrays.fill(scaleValues, in.readDouble());
+			} else if (version >= 3) {
+				int scaleCount = in.readInt();
+				if (scaleCount != 0 && scaleCount != ysize + 1) {
+					throw new IOException("wrong number of weight scales " + scaleCount + ": " + binaryModelFile);
+				}
+				scaleValues = new double[scaleCount];
+				for (int i = 0; i < scaleCount; i++) {
+					scaleValues[i] = in.readDouble();
+				}
+			}
+			if (precision == Weights.Precision.INT16 || precision == Weights.Precision.INT8) {
+				if (scaleValues.length != ysize + 1) {
+					throw new IOException("missing weight scales for " + precision + ": " + binaryModelFile);
 				}
-				break;
-			default:
-				sb.append(c);
+				scales = new Weights.Scales(ysize, stateStartIndex, scaleValues);
 			}
+			y = readStrings(in);
+			roles = roles(y);
+			templates = readStrings(in);
+			capacity = in.readInt();
+			featureSize = in.readInt();
+		} finally {
+			in.close();
 		}
-		return sb.toString();
-	}
-	
-	private int getIndex(StringBuilder sb, String template, int index, int pos, List<String[]> sentences) {
-		char firstChar = template.charAt(index++);
-		if (firstChar != '[') {
-			throw new IllegalStateException("wrong template format: " + template);
+		compiledTemplates = new FeatureTemplate[templates.length];
+		for (int t = 0; t < templates.length; t++) {
+			compiledTemplates[t] = FeatureTemplate.compile(templates[t], xsize);
+		}
+
+		long keysOffset = align(counter.getByteCount());
+		long valuesOffset = keysOffset + 8L * capacity;
+		long alphaOffset = align(valuesOffset + 4L * capacity);
+		RandomAccessFile file = new RandomAccessFile(binaryModelFile, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			if (channel.size() != alphaOffset + (long) precision.bytes * maxId) {
+				throw new IllegalStateException("wrong binary model size: " + binaryModelFile);
+			}
+			// 映射在channel关闭之后依然有效
+			dict = new FeatureIndex(map(channel, keysOffset, 8L * capacity).asLongBuffer(),
+					map(channel, valuesOffset, 4L * capacity).asIntBuffer(), featureSize);
+			alpha = Weights.wrap(map(channel, alphaOffset, (long) precision.bytes * maxId), precision, scales);
+			alphaArray = alpha.array();
+			transitions = transitions();
+		} finally {
+			file.close();
 		}
-		int col = 0, row = 0;
-		int neg = 1;
-		if (template.charAt(index++) == '-') {
-			neg = -1;
+	}
+
+	/**
+	 * 根据文件头自动判断模型格式并加载
+	 * @param modelFile 文本模型或者二进制模型
+	 * @param isGziped 文本模型是否经过gzip压缩，二进制模型忽略这个参数
+	 * @param charset 文本模型的字符编码，二进制模型忽略这个参数
+	 * @return 加载好的模型
+	 */
+	public static CRFTagger load(File modelFile, boolean isGziped, String charset) throws IOException {
+		if (isBinaryModel(modelFile)) {
+			return new CRFTagger(modelFile);
 		} else {
-			index--;
+			return new CRFTagger(modelFile, isGziped, charset);
 		}
-		
-		NEXT_ROW:
-		for (; index < template.length(); index++) {
-			char c = template.charAt(index);
-			switch (c) {
-			case '0': case '1': case '2': case '3': case '4': case '5': case '6': case '7': case '8': case '9':
-				row = row * 10 + (c - '0');
-				break;
-			case ',':
-				index++;
-				break NEXT_ROW;
-			default: 
-				throw new IllegalStateException("wrong template format: " + template);
+	}
+
+	/**
+	 * 判断文件是不是二进制模型
+	 */
+	public static boolean isBinaryModel(File modelFile) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(modelFile));
+		try {
+			return modelFile.length() >= 4 && in.readInt() == BINARY_MAGIC;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * 把模型保存成二进制格式，权重的精度不变
+	 * @param binaryModelFile 输出文件
+	 */
+	public void writeBinary(File binaryModelFile) throws IOException {
+		writeBinary(binaryModelFile, alpha.getPrecision());
+	}
+
+	/**
+	 * 把模型保存成二进制格式
+	 * @param binaryModelFile 输出文件
+	 * @param precision 权重的精度
+	 */
+	public void writeBinary(File binaryModelFile, Weights.Precision precision) throws IOException {
+		Weights weights = alpha.getPrecision() == precision ? alpha
+				: alpha.convert(precision, ysize, stateStartIndex);
+		double[] scales = weights.getScales();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(binaryModelFile)));
+		try {
+			out.writeInt(BINARY_MAGIC);
+			out.writeInt(BINARY_VERSION);
+			out.writeInt(xsize);
+			out.writeInt(ysize);
+			out.writeInt(maxId);
+			out.writeInt(stateStartIndex);
+			out.writeInt(precision.ordinal());
+			if (scales == null) {
+				out.writeInt(0);
+			} else {
+				out.writeInt(scales.length);
+				for (double scale: scales) {
+					out.writeDouble(scale);
+				}
 			}
+			writeStrings(out, y);
+			writeStrings(out, templates);
+			out.writeInt(dict.capacity());
+			out.writeInt(dict.size());
+			pad(out);
+			dict.writeKeys(out);
+			dict.writeValues(out);
+			// capacity是2的幂并且不小于16，写完value之后已经是8字节对齐的
+			weights.write(out);
+		} finally {
+			out.close();
 		}
-		
-		NEXT_COLUMN:
-		for (; index < template.length(); index++) {
-			char c = template.charAt(index);
-			switch (c) {
-			case '0': case '1': case '2': case '3': case '4': case '5': case '6': case '7': case '8': case '9':
-				col = col * 10 + (c - '0');
-				break;
-			case ']':
-				break NEXT_COLUMN;
-			default:
-				throw new IllegalStateException("wrong template format: " + template);
+	}
+
+	/**
+	 * 计算句子每个位置每个模板命中的特征id，写到workspace.features里面，
+	 * 没有命中的特征是-1
+	 */
+	void extractFeatures(List<String[]> sentence, int size, DecodeWorkspace workspace) {
+		// 先算好每个观察值的哈希，每个值会被多个模板用到
+		long[] cellHashes = workspace.cellHashes;
+		long[] cellPows = workspace.cellPows;
+		for (int i = 0; i < size; i++) {
+			String[] row = sentence.get(i);
+			for (int col = 0; col < xsize; col++) {
+				cellHashes[i * xsize + col] = FeatureIndex.hash(row[col]);
+				cellPows[i * xsize + col] = FeatureIndex.pow(row[col].length());
 			}
 		}
-		
-		row *= neg;
-		if (row < -4 || row > 4 || col < 0 || col > xsize) {
-			throw new IllegalStateException("wrong template format: " + template);
+		lookupFeatures(size, workspace);
+	}
+
+	/**
+	 * 和{@link #extractFeatures(List, int, DecodeWorkspace)}一样，观察值的哈希直接由每一列的Codec算出来
+	 */
+	void extractFeatures(FeatureMatrix matrix, int size, DecodeWorkspace workspace) {
+		long[] cellHashes = workspace.cellHashes;
+		long[] cellPows = workspace.cellPows;
+		for (int col = 0; col < xsize; col++) {
+			for (int i = 0; i < size; i++) {
+				cellHashes[i * xsize + col] = matrix.hash(i, col);
+				cellPows[i * xsize + col] = matrix.pow(i, col);
+			}
 		}
-		
-		int idx = pos + row;
-		if (idx < 0) {
-			sb.append(BOS[-idx - 1]);
-		} else if (idx >= sentences.size()) {
-			sb.append(EOS[idx - sentences.size()]);
-		} else {
-			sb.append(sentences.get(idx)[col]);
+		lookupFeatures(size, workspace);
+	}
+
+	private void lookupFeatures(int size, DecodeWorkspace workspace) {
+		long[] cellHashes = workspace.cellHashes;
+		long[] cellPows = workspace.cellPows;
+		int[] features = workspace.features;
+		for (int i = 0; i < size; i++) {
+			int index = i * compiledTemplates.length;
+			for (FeatureTemplate template : compiledTemplates) {
+				features[index++] = dict.get(template.key(i, size, cellHashes, cellPows, xsize));
+			}
+		}
+	}
+
+	private static int[] roles(String[] labels) {
+		int[] roles = new int[labels.length];
+		for (int i = 0; i < labels.length; i++) {
+			String label = labels[i];
+			if (label.equals("B")) {
+				roles[i] = ROLE_BEGIN;
+			} else if (label.equals("M") || label.equals("B2") || label.equals("B3")) {
+				roles[i] = ROLE_INSIDE;
+			} else if (label.equals("E")) {
+				roles[i] = ROLE_END;
+			} else if (label.equals("S")) {
+				roles[i] = ROLE_SINGLE;
+			} else {
+				roles[i] = ROLE_OTHER;
+			}
+		}
+		return roles;
+	}
+
+	private double[] transitions() {
+		double[] result = new double[ysize * ysize];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = alpha.get(stateStartIndex + i);
+		}
+		return result;
+	}
+
+	public String getLabel(int tagId) {
+		return y[tagId];
+	}
+
+	public int getRole(int tagId) {
+		return roles[tagId];
+	}
+
+	private static String[] readStrings(DataInputStream in) throws IOException {
+		String[] strs = new String[in.readInt()];
+		for (int i = 0; i < strs.length; i++) {
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			strs[i] = new String(bytes, "UTF-8");
 		}
-		return index;
+		return strs;
+	}
+
+	private static void writeStrings(DataOutputStream out, String[] strs) throws IOException {
+		out.writeInt(strs.length);
+		for (String str : strs) {
+			byte[] bytes = str.getBytes("UTF-8");
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static long align(long offset) {
+		return (offset + 7) & ~7L;
+	}
+
+	private static void pad(DataOutputStream out) throws IOException {
+		while ((out.size() & 7) != 0) {
+			out.writeByte(0);
+		}
+	}
+
+	private static MappedByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
 	}
 	
 	public String[] tag(List<String[]> sentence) {
@@ -213,69 +457,135 @@ public final class CRFTagger implements Tagger {
 			return new String[0];
 		}
 		int size = sentence.size();
-	    int[][] features = new int[size][];
+		DecodeWorkspace workspace = workspaces.get();
+		int[] tagIds = workspace.tagIds(size);
+		tag(sentence, tagIds);
+		String[] result = new String[size];
 		for (int i = 0; i < size; i++) {
-			int[] feature = new int[templates.length];
-			int index = 0;
-			for (String template : templates) {
-				String attribute = applyRule(template, i, sentence);
-				feature[index++] = dict.get(attribute) - 1;
-			}
-			features[i] = feature;
+			result[i] = y[tagIds[i]];
 		}
-		
-		double[][] bestCosts = new double[size][];
-		int[][] previousIndexes = new int[size][];
+		return result;
+	}
+
+	/**
+	 * 标注一个句子，结果写到调用者提供的数组里面，除此之外不分配内存
+	 * @param sentence 句子每个位置的特征
+	 * @param tagIds 输出每个位置的标签下标，对应{@link #y}，长度至少是句子的长度
+	 * @return 句子的长度
+	 */
+	public int tag(List<String[]> sentence, int[] tagIds) {
+		if (sentence == null || sentence.size() == 0) {
+			return 0;
+		}
+		int size = sentence.size();
+		if (tagIds.length < size) {
+			throw new IllegalArgumentException("tagIds.length " + tagIds.length + " < " + size);
+		}
+		DecodeWorkspace workspace = workspaces.get();
+		workspace.ensureCapacity(size, xsize, compiledTemplates.length, ysize);
+		extractFeatures(sentence, size, workspace);
+		return viterbi(size, tagIds, workspace);
+	}
+
+	/**
+	 * 标注一个句子，特征从按列存放的矩阵里面读，不需要生成特征字符串
+	 * @param matrix 句子的特征矩阵，前xsize列是模型用到的特征
+	 * @param tagIds 输出每个位置的标签下标，对应{@link #y}，长度至少是句子的长度
+	 * @return 句子的长度
+	 */
+	public int tag(FeatureMatrix matrix, int[] tagIds) {
+		int size = matrix.size();
+		if (size == 0) {
+			return 0;
+		}
+		if (matrix.getColumnCount() < xsize) {
+			throw new IllegalArgumentException("feature matrix has " + matrix.getColumnCount()
+					+ " columns, but the model needs " + xsize);
+		}
+		if (tagIds.length < size) {
+			throw new IllegalArgumentException("tagIds.length " + tagIds.length + " < " + size);
+		}
+		DecodeWorkspace workspace = workspaces.get();
+		workspace.ensureCapacity(size, xsize, compiledTemplates.length, ysize);
+		extractFeatures(matrix, size, workspace);
+		return viterbi(size, tagIds, workspace);
+	}
+
+	/**
+	 * 用workspace.features里面的特征做Viterbi解码
+	 */
+	private int viterbi(int size, int[] tagIds, DecodeWorkspace workspace) {
+		int templateSize = compiledTemplates.length;
+		int[] features = workspace.features;
+		double[] bestCosts = workspace.bestCosts;
+		int[] previousIndexes = workspace.previousIndexes;
+		double[] scores = workspace.scores;
 		for (int i = 0; i < size; i++) {
-			bestCosts[i] = new double[ysize];
-			int[] feature = features[i];
-			if (i > 0) {
-			    previousIndexes[i] = new int[ysize];
-			}
+			// 每个特征的ysize个权重是连续存放的，一次加到当前位置的得分向量上
 			for (int toIndex = 0; toIndex < ysize; toIndex++) {
-				double cost = 0;
-				for (int featureId : feature) {
-				    if (featureId >= 0) {
-					    cost += alpha[featureId + toIndex];
+				scores[toIndex] = 0;
+			}
+			int featureEnd = (i + 1) * templateSize;
+			if (alphaArray != null) {
+				double[] weights = alphaArray;
+				for (int f = i * templateSize; f < featureEnd; f++) {
+					int featureId = features[f];
+					if (featureId >= 0) {
+						for (int toIndex = 0; toIndex < ysize; toIndex++) {
+							scores[toIndex] += weights[featureId + toIndex];
+						}
 					}
 				}
-				if (i > 0) {
-				    double bestAdditionalCost = -Double.MAX_VALUE;
-				    int previousIndex = -1;
-				    for (int fromIndex = 0; fromIndex < ysize; fromIndex++) {
-				        double additionalCost = bestCosts[i - 1][fromIndex] + alpha[stateStartIndex + fromIndex * ysize + toIndex];
-				        if (additionalCost > bestAdditionalCost) {
-				    	    bestAdditionalCost = additionalCost;
-				    	    previousIndex = fromIndex;
-				        }
-				    }
-				    bestCosts[i][toIndex] = cost + bestAdditionalCost;
-				    previousIndexes[i][toIndex] = previousIndex;
-				} else {
-					bestCosts[i][toIndex] = cost;
+			} else {
+				for (int f = i * templateSize; f < featureEnd; f++) {
+					int featureId = features[f];
+					if (featureId >= 0) {
+						alpha.addTo(scores, featureId, ysize);
+					}
+				}
+			}
+			int row = i * ysize;
+			if (i > 0) {
+				int previousRow = row - ysize;
+				for (int toIndex = 0; toIndex < ysize; toIndex++) {
+					double bestAdditionalCost = -Double.MAX_VALUE;
+					int previousIndex = -1;
+					for (int fromIndex = 0; fromIndex < ysize; fromIndex++) {
+						double additionalCost = bestCosts[previousRow + fromIndex] + transitions[fromIndex * ysize + toIndex];
+						if (additionalCost > bestAdditionalCost) {
+							bestAdditionalCost = additionalCost;
+							previousIndex = fromIndex;
+						}
+					}
+					bestCosts[row + toIndex] = scores[toIndex] + bestAdditionalCost;
+					previousIndexes[row + toIndex] = previousIndex;
+				}
+			} else {
+				for (int toIndex = 0; toIndex < ysize; toIndex++) {
+					bestCosts[toIndex] = scores[toIndex];
 				}
 			}
 		}
 		
 		double bestCost = -Double.MAX_VALUE;
 		int bestLastIndex = -1;
+		int lastRow = (size - 1) * ysize;
 		for (int j = 0; j < ysize; j++) {
-			double cost = bestCosts[size - 1][j];
+			double cost = bestCosts[lastRow + j];
 			if (cost > bestCost) {
 				bestCost = cost;
 				bestLastIndex = j;
 			}
 		}
 		
-		String[] result = new String[size];
-		result[size - 1] = y[bestLastIndex];
+		tagIds[size - 1] = bestLastIndex;
 		int index = size - 1;
 		int previousIndex = bestLastIndex;
 		while (index > 0) {
-			previousIndex = previousIndexes[index][previousIndex];
+			previousIndex = previousIndexes[index * ysize + previousIndex];
 			index--;
-			result[index] = y[previousIndex];
+			tagIds[index] = previousIndex;
 		}
-		return result;
+		return size;
 	}
 }
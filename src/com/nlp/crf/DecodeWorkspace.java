@@ -0,0 +1,53 @@
+package com.nlp.crf;
+
+/**
+ * 解码用的临时空间，每个线程一份，按见过的最长句子分配，之后重复使用
+ * 所有二维的数据都按行展开成一维数组
+ */
+final class DecodeWorkspace {
+	// 每个位置每一列观察值的哈希和 P^长度，下标是 位置 * xsize + 列
+	long[] cellHashes = new long[0];
+	long[] cellPows = new long[0];
+	// 每个位置每个模板命中的特征id，下标是 位置 * 模板个数 + 模板
+	int[] features = new int[0];
+	// Viterbi的最优得分和回溯指针，下标是 位置 * ysize + 标签
+	double[] bestCosts = new double[0];
+	int[] previousIndexes = new int[0];
+	// 当前位置每个标签的发射得分
+	double[] scores = new double[0];
+	// String接口用来存放标签下标
+	private int[] tagIdBuffer = new int[0];
+
+	/**
+	 * 保证空间能放下size长度的句子
+	 */
+	void ensureCapacity(int size, int xsize, int templateSize, int ysize) {
+		if (cellHashes.length < size * xsize) {
+			int length = grow(cellHashes.length, size * xsize);
+			cellHashes = new long[length];
+			cellPows = new long[length];
+		}
+		if (features.length < size * templateSize) {
+			features = new int[grow(features.length, size * templateSize)];
+		}
+		if (bestCosts.length < size * ysize) {
+			int length = grow(bestCosts.length, size * ysize);
+			bestCosts = new double[length];
+			previousIndexes = new int[length];
+		}
+		if (scores.length < ysize) {
+			scores = new double[ysize];
+		}
+	}
+
+	int[] tagIds(int size) {
+		if (tagIdBuffer.length < size) {
+			tagIdBuffer = new int[grow(tagIdBuffer.length, size)];
+		}
+		return tagIdBuffer;
+	}
+
+	private static int grow(int oldLength, int minLength) {
+		return Math.max(minLength, oldLength + (oldLength >> 1));
+	}
+}
@@ -0,0 +1,176 @@
+package com.nlp.crf;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * 特征字典，特征名字的64位哈希到特征id的开放寻址表
+ * <p>特征名字的哈希是按字符计算的多项式哈希，满足
+ * hash(a + b) = hash(a) * pow(b) + hash(b)，其中pow(b) = P^|b|，
+ * 所以模板的字面量和各个观察值的哈希可以事先算好，
+ * 标注的时候直接组合出特征的key，不需要拼接字符串</p>
+ * <p>key哈希的是展开以后的特征字符串（例如"U03:中/C"），不是（模板id，观察值id）这样的元组。
+ * CRF++的模型里特征就是按展开的字符串区分的，不同的模板展开成同一个字符串时是同一个特征，
+ * 观察值也不是封闭的词表（任意字符、数字、_B-1这样的边界符号），模型里没有观察值到id的映射，
+ * 哈希字符串可以完全保持CRF++的语义，又不用在标注的时候真的拼接字符串</p>
+ * <p>表里只存哈希不存字符串，所以会有误判：</p>
+ * <ul>
+ * <li>加载模型的时候如果两个特征的哈希相同会直接抛异常，模型内部的冲突不会漏过</li>
+ * <li>模型里面不存在的特征，如果哈希恰好等于n个特征中的某一个，就会被当成那个特征，
+ * 即使哈希是均匀的，每次查询的概率也大约是n / 2^64（100万个特征约2^-44），
+ * 一句话要查 字数 * 模板数 次</li>
+ * <li>模2^64的多项式哈希并不均匀，有结构的字符串（例如按Thue-Morse序列构造的）可以稳定地撞上，
+ * 上面的概率只是对自然文本的估计，不是保证</li>
+ * <li>撞上的时候会悄悄加上错误特征的权重，没有任何检测，只会表现为个别位置的标注不同</li>
+ * </ul>
+ * <p>表存放在LongBuffer和IntBuffer里面，文本模型用堆上的数组，
+ * 二进制模型直接映射文件</p>
+ */
+final class FeatureIndex {
+	// 多项式哈希的基数，奇数并且大于char的取值范围
+	static final long P = 1099511628211L;
+	// 空的槽位
+	private static final int EMPTY = -1;
+
+	private LongBuffer keys;
+	private IntBuffer values;
+	private int capacity;
+	private int shift;
+	private int size;
+
+	FeatureIndex(int expectedSize) {
+		int capacity = 16;
+		while (capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	/**
+	 * 用已经建好的表构造，例如从二进制模型映射出来的表
+	 */
+	FeatureIndex(LongBuffer keys, IntBuffer values, int size) {
+		this.keys = keys;
+		this.values = values;
+		this.capacity = keys.capacity();
+		this.shift = 64 - Integer.numberOfTrailingZeros(capacity);
+		this.size = size;
+		if (Integer.bitCount(capacity) != 1 || values.capacity() != capacity) {
+			throw new IllegalStateException("wrong feature index capacity: " + capacity);
+		}
+	}
+
+	private void allocate(int capacity) {
+		int[] emptyValues = new int[capacity];
+		Arrays.fill(emptyValues, EMPTY);
+		keys = LongBuffer.wrap(new long[capacity]);
+		values = IntBuffer.wrap(emptyValues);
+		this.capacity = capacity;
+		shift = 64 - Integer.numberOfTrailingZeros(capacity);
+		size = 0;
+	}
+
+	static long hash(CharSequence s) {
+		long h = 0;
+		for (int i = 0; i < s.length(); i++) {
+			h = h * P + s.charAt(i);
+		}
+		return h;
+	}
+
+	static long pow(int length) {
+		long p = 1;
+		for (int i = 0; i < length; i++) {
+			p *= P;
+		}
+		return p;
+	}
+
+	private int slot(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+	}
+
+	/**
+	 * 加入一个特征
+	 * @param name 特征的名字
+	 * @param id 特征id
+	 */
+	void put(String name, int id) {
+		long key = hash(name);
+		if ((size + 1) * 2 > capacity) {
+			rehash(capacity << 1);
+		}
+		int mask = capacity - 1;
+		int slot = slot(key);
+		while (values.get(slot) != EMPTY) {
+			if (keys.get(slot) == key) {
+				throw new IllegalStateException("feature hash collision: " + name
+						+ " (id " + id + ") and id " + values.get(slot));
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys.put(slot, key);
+		values.put(slot, id);
+		size++;
+	}
+
+	private void rehash(int newCapacity) {
+		LongBuffer oldKeys = keys;
+		IntBuffer oldValues = values;
+		int oldCapacity = capacity;
+		allocate(newCapacity);
+		int mask = capacity - 1;
+		for (int i = 0; i < oldCapacity; i++) {
+			if (oldValues.get(i) != EMPTY) {
+				int slot = slot(oldKeys.get(i));
+				while (values.get(slot) != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				keys.put(slot, oldKeys.get(i));
+				values.put(slot, oldValues.get(i));
+				size++;
+			}
+		}
+	}
+
+	/**
+	 * 查询特征id
+	 * @param key 特征名字的哈希
+	 * @return 特征id，不存在返回-1
+	 */
+	int get(long key) {
+		int mask = capacity - 1;
+		int slot = slot(key);
+		int value;
+		while ((value = values.get(slot)) != EMPTY) {
+			if (keys.get(slot) == key) {
+				return value;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	int size() {
+		return size;
+	}
+
+	int capacity() {
+		return capacity;
+	}
+
+	void writeKeys(DataOutputStream out) throws IOException {
+		for (int i = 0; i < capacity; i++) {
+			out.writeLong(keys.get(i));
+		}
+	}
+
+	void writeValues(DataOutputStream out) throws IOException {
+		for (int i = 0; i < capacity; i++) {
+			out.writeInt(values.get(i));
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package com.nlp.crf;
+
+/**
+ * 一个句子的特征矩阵，按列存放，每一列是一个int数组，每一行对应句子里的一个位置
+ * 每一列有一个{@link Codec}，规定int值对应的观察值字符串，例如
+ * <ul>
+ * <li>{@link #CHAR}: 值是字符本身，观察值是这个字符</li>
+ * <li>{@link #INT}: 值是整数，观察值是它的十进制表示</li>
+ * <li>{@link #symbols(String...)}: 值是符号表的下标</li>
+ * </ul>
+ * 标注的时候直接用Codec算出观察值的哈希交给特征模板，不需要生成字符串，
+ * 只有输出训练数据或者调试信息的时候才用{@link #appendRow(StringBuilder, int)}转成文本
+ */
+public final class FeatureMatrix {
+	/**
+	 * 列的值和观察值字符串之间的对应关系
+	 */
+	public static abstract class Codec {
+		/**
+		 * 值对应的观察值的哈希，等于FeatureIndex.hash(观察值)
+		 */
+		abstract long hash(int value);
+
+		/**
+		 * P^观察值的长度
+		 */
+		abstract long pow(int value);
+
+		/**
+		 * 把值对应的观察值追加到sb后面
+		 */
+		public abstract void appendTo(StringBuilder sb, int value);
+
+		public String toString(int value) {
+			StringBuilder sb = new StringBuilder();
+			appendTo(sb, value);
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * 值是一个字符
+	 */
+	public static final Codec CHAR = new Codec() {
+		long hash(int value) {
+			return (char) value;
+		}
+
+		long pow(int value) {
+			return FeatureIndex.P;
+		}
+
+		public void appendTo(StringBuilder sb, int value) {
+			sb.append((char) value);
+		}
+	};
+
+	/**
+	 * 值是一个整数，观察值是十进制表示
+	 */
+	public static final Codec INT = new Codec() {
+		// 比较小的非负整数的哈希事先算好
+		private static final int CACHE_SIZE = 1024;
+		private final long[] hashes = new long[CACHE_SIZE];
+		private final long[] pows = new long[11];
+
+		{
+			for (int i = 0; i < pows.length; i++) {
+				pows[i] = FeatureIndex.pow(i);
+			}
+			for (int i = 0; i < CACHE_SIZE; i++) {
+				hashes[i] = FeatureIndex.hash(Integer.toString(i));
+			}
+		}
+
+		long hash(int value) {
+			if (value >= 0 && value < CACHE_SIZE) {
+				return hashes[value];
+			}
+			long h = 0;
+			long v = value;
+			if (v < 0) {
+				h = '-';
+				v = -v;
+			}
+			long divisor = 1;
+			while (divisor * 10 <= v) {
+				divisor *= 10;
+			}
+			for (; divisor > 0; divisor /= 10) {
+				h = h * FeatureIndex.P + ('0' + (v / divisor) % 10);
+			}
+			return h;
+		}
+
+		long pow(int value) {
+			int length = value < 0 ? 2 : 1;
+			for (long v = Math.abs((long) value); v >= 10; v /= 10) {
+				length++;
+			}
+			return length < pows.length ? pows[length] : FeatureIndex.pow(length);
+		}
+
+		public void appendTo(StringBuilder sb, int value) {
+			sb.append(value);
+		}
+	};
+
+	/**
+	 * 值是符号表的下标
+	 * @param symbols 符号表
+	 */
+	public static Codec symbols(final String... symbols) {
+		final long[] hashes = new long[symbols.length];
+		final long[] pows = new long[symbols.length];
+		for (int i = 0; i < symbols.length; i++) {
+			hashes[i] = FeatureIndex.hash(symbols[i]);
+			pows[i] = FeatureIndex.pow(symbols[i].length());
+		}
+		return new Codec() {
+			long hash(int value) {
+				return hashes[value];
+			}
+
+			long pow(int value) {
+				return pows[value];
+			}
+
+			public void appendTo(StringBuilder sb, int value) {
+				sb.append(symbols[value]);
+			}
+		};
+	}
+
+	private final Codec[] codecs;
+	private int[][] columns;
+	private int size;
+
+	/**
+	 * @param codecs 每一列的Codec，列数就是codecs的长度
+	 */
+	public FeatureMatrix(Codec... codecs) {
+		this.codecs = codecs.clone();
+		this.columns = new int[codecs.length][16];
+	}
+
+	/**
+	 * @return 列数
+	 */
+	public int getColumnCount() {
+		return codecs.length;
+	}
+
+	public Codec getCodec(int col) {
+		return codecs[col];
+	}
+
+	/**
+	 * @return 行数，也就是句子的长度
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * 清空所有的行，空间留着下一个句子用
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * 在最后加一行，所有列都是0
+	 * @return 新加的行号
+	 */
+	public int addRow() {
+		if (size == columns[0].length) {
+			int length = size + (size >> 1);
+			for (int col = 0; col < columns.length; col++) {
+				int[] column = new int[length];
+				System.arraycopy(columns[col], 0, column, 0, size);
+				columns[col] = column;
+			}
+		}
+		for (int[] column : columns) {
+			column[size] = 0;
+		}
+		return size++;
+	}
+
+	public int get(int row, int col) {
+		return columns[col][row];
+	}
+
+	public void set(int row, int col, int value) {
+		columns[col][row] = value;
+	}
+
+	/**
+	 * 直接访问一列，适合一次写入整个句子的特征，
+	 * 返回的数组长度可能比size大，加行之后可能会换成新的数组
+	 */
+	public int[] column(int col) {
+		return columns[col];
+	}
+
+	long hash(int row, int col) {
+		return codecs[col].hash(columns[col][row]);
+	}
+
+	long pow(int row, int col) {
+		return codecs[col].pow(columns[col][row]);
+	}
+
+	/**
+	 * 把一行转成CRF++训练数据的格式，列之间用tab隔开
+	 */
+	public void appendRow(StringBuilder sb, int row) {
+		for (int col = 0; col < codecs.length; col++) {
+			if (col > 0) {
+				sb.append('\t');
+			}
+			codecs[col].appendTo(sb, columns[col][row]);
+		}
+	}
+}
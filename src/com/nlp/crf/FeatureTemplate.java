@@ -0,0 +1,171 @@
+package com.nlp.crf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 编译好的CRF++特征模板，例如 U03:%x[-1,0]/%x[0,0]
+ * 模型加载的时候解析一次，得到字面量片段和(行偏移, 列)对，
+ * 标注的时候直接按照这个计划组合特征的哈希，不再扫描模板字符串
+ */
+final class FeatureTemplate {
+	// 原始模板
+	final String template;
+	// 字面量片段，literals.length == rows.length + 1
+	// U03:%x[-1,0]/%x[0,0] 对应 {"U03:", "/", ""}
+	final String[] literals;
+	// 每个宏%x[row,col]的行偏移
+	final int[] rows;
+	// 每个宏%x[row,col]的列
+	final int[] cols;
+	// 字面量片段的哈希和 P^长度
+	private final long[] literalHashes;
+	private final long[] literalPows;
+
+	private static final long[] BOS_HASHES = hashes(CRFTagger.BOS);
+	private static final long[] BOS_POWS = pows(CRFTagger.BOS);
+	private static final long[] EOS_HASHES = hashes(CRFTagger.EOS);
+	private static final long[] EOS_POWS = pows(CRFTagger.EOS);
+
+	private FeatureTemplate(String template, String[] literals, int[] rows, int[] cols) {
+		this.template = template;
+		this.literals = literals;
+		this.rows = rows;
+		this.cols = cols;
+		this.literalHashes = hashes(literals);
+		this.literalPows = pows(literals);
+	}
+
+	private static long[] hashes(String[] strs) {
+		long[] result = new long[strs.length];
+		for (int i = 0; i < strs.length; i++) {
+			result[i] = FeatureIndex.hash(strs[i]);
+		}
+		return result;
+	}
+
+	private static long[] pows(String[] strs) {
+		long[] result = new long[strs.length];
+		for (int i = 0; i < strs.length; i++) {
+			result[i] = FeatureIndex.pow(strs[i].length());
+		}
+		return result;
+	}
+
+	static FeatureTemplate compile(String template, int xsize) {
+		List<String> literals = new ArrayList<String>();
+		List<int[]> macros = new ArrayList<int[]>();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < template.length(); i++) {
+			char c = template.charAt(i);
+			switch (c) {
+			case '%':
+				i++;
+				if (i >= template.length() || template.charAt(i) != 'x') {
+					throw new IllegalStateException("wrong template format: " + template);
+				}
+				i++;
+				int[] macro = new int[2];
+				i = parseIndex(template, i, xsize, macro);
+				literals.add(sb.toString());
+				sb.setLength(0);
+				macros.add(macro);
+				break;
+			default:
+				sb.append(c);
+			}
+		}
+		literals.add(sb.toString());
+
+		int[] rows = new int[macros.size()];
+		int[] cols = new int[macros.size()];
+		for (int i = 0; i < macros.size(); i++) {
+			rows[i] = macros.get(i)[0];
+			cols[i] = macros.get(i)[1];
+		}
+		return new FeatureTemplate(template, literals.toArray(new String[literals.size()]), rows, cols);
+	}
+
+	/**
+	 * 解析[row,col]
+	 * @param template 模板
+	 * @param index '['所在的位置
+	 * @param xsize 特征的列数
+	 * @param macro 输出的{row, col}
+	 * @return ']'所在的位置
+	 */
+	private static int parseIndex(String template, int index, int xsize, int[] macro) {
+		if (index >= template.length() || template.charAt(index++) != '[') {
+			throw new IllegalStateException("wrong template format: " + template);
+		}
+		int col = 0, row = 0;
+		int neg = 1;
+		if (index < template.length() && template.charAt(index) == '-') {
+			neg = -1;
+			index++;
+		}
+
+		NEXT_ROW:
+		for (; index < template.length(); index++) {
+			char c = template.charAt(index);
+			switch (c) {
+			case '0': case '1': case '2': case '3': case '4': case '5': case '6': case '7': case '8': case '9':
+				row = row * 10 + (c - '0');
+				break;
+			case ',':
+				index++;
+				break NEXT_ROW;
+			default:
+				throw new IllegalStateException("wrong template format: " + template);
+			}
+		}
+
+		NEXT_COLUMN:
+		for (; index < template.length(); index++) {
+			char c = template.charAt(index);
+			switch (c) {
+			case '0': case '1': case '2': case '3': case '4': case '5': case '6': case '7': case '8': case '9':
+				col = col * 10 + (c - '0');
+				break;
+			case ']':
+				break NEXT_COLUMN;
+			default:
+				throw new IllegalStateException("wrong template format: " + template);
+			}
+		}
+
+		row *= neg;
+		if (row < -4 || row > 4 || col < 0 || col > xsize) {
+			throw new IllegalStateException("wrong template format: " + template);
+		}
+		macro[0] = row;
+		macro[1] = col;
+		return index;
+	}
+
+	/**
+	 * 计算pos位置上的特征key，等于拼出来的特征名字的哈希
+	 * @param pos 当前位置
+	 * @param size 句子长度
+	 * @param cellHashes 每个位置每一列观察值的哈希，下标是 位置 * xsize + 列
+	 * @param cellPows 每个位置每一列观察值对应的 P^长度
+	 * @param xsize 特征的列数
+	 * @return 特征key
+	 */
+	long key(int pos, int size, long[] cellHashes, long[] cellPows, int xsize) {
+		long h = literalHashes[0];
+		for (int k = 0; k < rows.length; k++) {
+			int idx = pos + rows[k];
+			if (idx < 0) {
+				h = h * BOS_POWS[-idx - 1] + BOS_HASHES[-idx - 1];
+			} else if (idx >= size) {
+				h = h * EOS_POWS[idx - size] + EOS_HASHES[idx - size];
+			} else {
+				int cell = idx * xsize + cols[k];
+				h = h * cellPows[cell] + cellHashes[cell];
+			}
+			h = h * literalPows[k + 1] + literalHashes[k + 1];
+		}
+		return h;
+	}
+}
@@ -3,5 +3,45 @@ package com.nlp.crf;
 import java.util.List;
 
 public interface Tagger {
+	// 标签在切分中的角色，标签到角色的映射在模型加载的时候算好
+	// 不认识的标签
+	int ROLE_OTHER = 0;
+	// 词的开头，B
+	int ROLE_BEGIN = 1;
+	// 词的中间，M、B2、B3
+	int ROLE_INSIDE = 2;
+	// 词的结尾，E
+	int ROLE_END = 3;
+	// 单字词，S
+	int ROLE_SINGLE = 4;
+
 	String[] tag(List<String[]> features);
+
+	/**
+	 * 标注一个句子，输出标签下标
+	 * @param features 句子每个位置的特征
+	 * @param tagIds 输出每个位置的标签下标，长度至少是句子的长度
+	 * @return 句子的长度
+	 */
+	int tag(List<String[]> features, int[] tagIds);
+
+	/**
+	 * 标注一个句子，特征按列存放在矩阵里面
+	 * @param features 句子的特征矩阵
+	 * @param tagIds 输出每个位置的标签下标，长度至少是句子的长度
+	 * @return 句子的长度
+	 */
+	int tag(FeatureMatrix features, int[] tagIds);
+
+	/**
+	 * @param tagId 标签下标
+	 * @return 标签的名字
+	 */
+	String getLabel(int tagId);
+
+	/**
+	 * @param tagId 标签下标
+	 * @return 标签的角色，ROLE_*
+	 */
+	int getRole(int tagId);
 }
@@ -0,0 +1,153 @@
+package com.nlp.crf;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 比较两种发射得分的计算顺序
+ * <ul>
+ * <li>label-major: 每个标签把所有特征扫一遍，原来的实现</li>
+ * <li>fused: 每个特征把ysize个权重一次加到得分向量上，{@link CRFTagger#tag(List, int[])}</li>
+ * </ul>
+ * 输入是CRF++格式的特征文件，例如ProduceTrainData在2010的测试语料上生成的文件，
+ * 多出来的列（标准答案）会被忽略
+ */
+public class TaggerBenchmark {
+	private static final int WARMUP_ROUNDS = 3;
+	private static final int ROUNDS = 10;
+
+	static List<List<String[]>> readSentences(String filename) throws IOException {
+		List<List<String[]>> sentences = new ArrayList<List<String[]>>();
+		BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(filename), "UTF-8"));
+		try {
+			List<String[]> sentence = new ArrayList<String[]>();
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (line.trim().length() == 0) {
+					if (!sentence.isEmpty()) {
+						sentences.add(sentence);
+						sentence = new ArrayList<String[]>();
+					}
+				} else {
+					sentence.add(line.split("\t"));
+				}
+			}
+			if (!sentence.isEmpty()) {
+				sentences.add(sentence);
+			}
+		} finally {
+			br.close();
+		}
+		return sentences;
+	}
+
+	/**
+	 * 原来按标签逐个扫特征的解码，用来对比
+	 */
+	static int tagLabelMajor(CRFTagger tagger, List<String[]> sentence, int[] tagIds, DecodeWorkspace workspace) {
+		int size = sentence.size();
+		int ysize = tagger.ysize;
+		int templateSize = tagger.templates.length;
+		workspace.ensureCapacity(size, tagger.xsize, templateSize, ysize);
+		tagger.extractFeatures(sentence, size, workspace);
+		int[] features = workspace.features;
+		double[] bestCosts = workspace.bestCosts;
+		int[] previousIndexes = workspace.previousIndexes;
+		for (int i = 0; i < size; i++) {
+			int featureStart = i * templateSize;
+			int featureEnd = featureStart + templateSize;
+			for (int toIndex = 0; toIndex < ysize; toIndex++) {
+				double cost = 0;
+				for (int f = featureStart; f < featureEnd; f++) {
+					int featureId = features[f];
+					if (featureId >= 0) {
+						cost += tagger.alpha.get(featureId + toIndex);
+					}
+				}
+				if (i > 0) {
+					double bestAdditionalCost = -Double.MAX_VALUE;
+					int previousIndex = -1;
+					for (int fromIndex = 0; fromIndex < ysize; fromIndex++) {
+						double additionalCost = bestCosts[(i - 1) * ysize + fromIndex]
+								+ tagger.alpha.get(tagger.stateStartIndex + fromIndex * ysize + toIndex);
+						if (additionalCost > bestAdditionalCost) {
+							bestAdditionalCost = additionalCost;
+							previousIndex = fromIndex;
+						}
+					}
+					bestCosts[i * ysize + toIndex] = cost + bestAdditionalCost;
+					previousIndexes[i * ysize + toIndex] = previousIndex;
+				} else {
+					bestCosts[toIndex] = cost;
+				}
+			}
+		}
+		double bestCost = -Double.MAX_VALUE;
+		int index = size - 1;
+		for (int j = 0; j < ysize; j++) {
+			if (bestCosts[index * ysize + j] > bestCost) {
+				bestCost = bestCosts[index * ysize + j];
+				tagIds[index] = j;
+			}
+		}
+		for (; index > 0; index--) {
+			tagIds[index - 1] = previousIndexes[index * ysize + tagIds[index]];
+		}
+		return size;
+	}
+
+	private static long run(CRFTagger tagger, List<List<String[]>> sentences, boolean fused,
+							int[] tagIds, DecodeWorkspace workspace) {
+		long checksum = 0;
+		for (List<String[]> sentence : sentences) {
+			int size = fused ? tagger.tag(sentence, tagIds) : tagLabelMajor(tagger, sentence, tagIds, workspace);
+			for (int i = 0; i < size; i++) {
+				checksum = checksum * 31 + tagIds[i];
+			}
+		}
+		return checksum;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: TaggerBenchmark <model_file> <feature_file>...");
+			System.exit(1);
+		}
+		File modelFile = new File(args[0]);
+		CRFTagger tagger = CRFTagger.load(modelFile, modelFile.getName().endsWith(".gz"), "UTF-8");
+		List<List<String[]>> sentences = new ArrayList<List<String[]>>();
+		int maxSize = 0;
+		long charCount = 0;
+		for (int i = 1; i < args.length; i++) {
+			for (List<String[]> sentence : readSentences(args[i])) {
+				sentences.add(sentence);
+				maxSize = Math.max(maxSize, sentence.size());
+				charCount += sentence.size();
+			}
+		}
+		System.out.println("#sentence " + sentences.size() + "; #char " + charCount);
+
+		int[] tagIds = new int[maxSize];
+		DecodeWorkspace workspace = new DecodeWorkspace();
+		long[] checksums = new long[2];
+		String[] names = {"label-major", "fused"};
+		for (int variant = 0; variant < 2; variant++) {
+			boolean fused = variant == 1;
+			for (int round = 0; round < WARMUP_ROUNDS; round++) {
+				checksums[variant] = run(tagger, sentences, fused, tagIds, workspace);
+			}
+			long startTime = System.nanoTime();
+			for (int round = 0; round < ROUNDS; round++) {
+				run(tagger, sentences, fused, tagIds, workspace);
+			}
+			long duration = System.nanoTime() - startTime;
+			System.out.println(names[variant] + ": " + (duration / ROUNDS / 1000000) + "ms/round, "
+					+ (charCount * ROUNDS * 1000000000L / duration) + " chars/s");
+		}
+		if (checksums[0] != checksums[1]) {
+			System.err.println("tags differ between label-major and fused decoding");
+			System.exit(1);
+		}
+	}
+}
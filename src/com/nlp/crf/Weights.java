@@ -0,0 +1,371 @@
+package com.nlp.crf;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * CRF模型的权重，支持几种存储精度
+ * <ul>
+ * <li>DOUBLE: 64位浮点，和CRF++文本模型一样</li>
+ * <li>FLOAT: 32位浮点，内存减半</li>
+ * <li>INT16/INT8: 线性量化，w = q * scale，scale = max|w| / 32767 (127)，
+ * 状态特征的权重每个标签一个scale，转移矩阵单独一个scale，见{@link Scales}</li>
+ * </ul>
+ * 精度在转换二进制模型的时候选择，解码的时候即时反量化
+ * 文本模型读进来的DOUBLE权重直接存在double[]里，{@link #array()}返回这个数组，解码的时候不经过Buffer
+ */
+public abstract class Weights {
+	public enum Precision {
+		DOUBLE(8), FLOAT(4), INT16(2), INT8(1);
+
+		// 每个权重占的字节数
+		public final int bytes;
+
+		Precision(int bytes) {
+			this.bytes = bytes;
+		}
+	}
+
+	public abstract Precision getPrecision();
+
+	/**
+	 * 整数精度的量化比例，每个标签一个，转移矩阵单独一个
+	 * 转移矩阵的权重通常比状态特征大很多，所有权重共用一个比例的时候，
+	 * INT8下很多小的状态特征权重会被量化成0
+	 */
+	static final class Scales {
+		private final int ysize;
+		// 转移矩阵的权重是[transitionStart, transitionEnd)
+		private final int transitionStart;
+		private final int transitionEnd;
+		// 前ysize个是每个标签的比例，最后一个是转移矩阵的比例
+		private final double[] values;
+
+		/**
+		 * @param ysize 标签个数
+		 * @param stateStartIndex 转移矩阵的开始位置，一共ysize * ysize个权重
+		 * @param values ysize + 1个比例
+		 */
+		Scales(int ysize, int stateStartIndex, double[] values) {
+			if (values.length != ysize + 1) {
+				throw new IllegalArgumentException("expect " + (ysize + 1) + " scales, got " + values.length);
+			}
+			this.ysize = ysize;
+			this.transitionStart = stateStartIndex;
+			this.transitionEnd = stateStartIndex + ysize * ysize;
+			this.values = values;
+		}
+
+		/**
+		 * 第index个权重属于哪一组，0到ysize - 1是标签，ysize是转移矩阵
+		 * 每个特征的权重从ysize的倍数开始，所以index % ysize就是标签
+		 */
+		int group(int index) {
+			if (index >= transitionStart && index < transitionEnd) {
+				return ysize;
+			}
+			return index % ysize;
+		}
+
+		double get(int index) {
+			return values[group(index)];
+		}
+
+		double[] values() {
+			return values.clone();
+		}
+	}
+
+	/**
+	 * 第index个权重的量化比例，浮点精度返回1
+	 */
+	public double getScale(int index) {
+		return 1;
+	}
+
+	/**
+	 * @return 整数精度的ysize + 1个量化比例，见{@link Scales}，浮点精度返回null
+	 */
+	double[] getScales() {
+		return null;
+	}
+
+	public abstract int size();
+
+	public abstract double get(int index);
+
+	/**
+	 * scores[k] += w[offset + k]，k从0到length - 1
+	 */
+	public abstract void addTo(double[] scores, int offset, int length);
+
+	abstract void write(DataOutputStream out) throws IOException;
+
+	/**
+	 * @return 堆上的double[]权重，映射文件或者其他精度的时候返回null
+	 */
+	double[] array() {
+		return null;
+	}
+
+	/**
+	 * 把权重转换成另一种精度
+	 * @param precision 精度
+	 * @param ysize 标签个数，整数精度的时候每个标签一个量化比例
+	 * @param stateStartIndex 转移矩阵的开始位置，转移矩阵单独一个量化比例
+	 */
+	public Weights convert(Precision precision, int ysize, int stateStartIndex) {
+		int size = size();
+		if (precision == Precision.DOUBLE) {
+			double[] result = new double[size];
+			for (int i = 0; i < size; i++) {
+				result[i] = get(i);
+			}
+			return new ArrayWeights(result);
+		} else if (precision == Precision.FLOAT) {
+			float[] result = new float[size];
+			for (int i = 0; i < size; i++) {
+				result[i] = (float) get(i);
+			}
+			return new FloatWeights(FloatBuffer.wrap(result));
+		}
+
+		// 每一组的最大绝对值
+		Scales groups = new Scales(ysize, stateStartIndex, new double[ysize + 1]);
+		double[] maxAbs = new double[ysize + 1];
+		for (int i = 0; i < size; i++) {
+			int group = groups.group(i);
+			maxAbs[group] = Math.max(maxAbs[group], Math.abs(get(i)));
+		}
+		int maxLevel = precision == Precision.INT16 ? Short.MAX_VALUE : Byte.MAX_VALUE;
+		double[] values = new double[ysize + 1];
+		for (int g = 0; g < values.length; g++) {
+			values[g] = maxAbs[g] == 0 ? 1 : maxAbs[g] / maxLevel;
+		}
+		Scales scales = new Scales(ysize, stateStartIndex, values);
+		if (precision == Precision.INT16) {
+			short[] result = new short[size];
+			for (int i = 0; i < size; i++) {
+				result[i] = (short) Math.round(get(i) / scales.get(i));
+			}
+			return new ShortWeights(ShortBuffer.wrap(result), scales);
+		} else {
+			byte[] result = new byte[size];
+			for (int i = 0; i < size; i++) {
+				result[i] = (byte) Math.round(get(i) / scales.get(i));
+			}
+			return new ByteWeights(ByteBuffer.wrap(result), scales);
+		}
+	}
+
+	/**
+	 * 把一段字节按照给定的精度解释成权重，例如二进制模型里面映射出来的一段
+	 */
+	static Weights wrap(ByteBuffer buffer, Precision precision, Scales scales) {
+		switch (precision) {
+		case DOUBLE:
+			return new DoubleWeights(buffer.asDoubleBuffer());
+		case FLOAT:
+			return new FloatWeights(buffer.asFloatBuffer());
+		case INT16:
+			return new ShortWeights(buffer.asShortBuffer(), scales);
+		default:
+			return new ByteWeights(buffer.slice(), scales);
+		}
+	}
+
+	static Weights wrap(double[] weights) {
+		return new ArrayWeights(weights);
+	}
+
+	/**
+	 * 堆上的DOUBLE权重，文本模型默认的存储方式
+	 */
+	private static final class ArrayWeights extends Weights {
+		private final double[] weights;
+
+		ArrayWeights(double[] weights) {
+			this.weights = weights;
+		}
+
+		public Precision getPrecision() {
+			return Precision.DOUBLE;
+		}
+
+		public int size() {
+			return weights.length;
+		}
+
+		public double get(int index) {
+			return weights[index];
+		}
+
+		public void addTo(double[] scores, int offset, int length) {
+			for (int k = 0; k < length; k++) {
+				scores[k] += weights[offset + k];
+			}
+		}
+
+		double[] array() {
+			return weights;
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			for (int i = 0; i < weights.length; i++) {
+				out.writeDouble(weights[i]);
+			}
+		}
+	}
+
+	private static final class DoubleWeights extends Weights {
+		private final DoubleBuffer buffer;
+
+		DoubleWeights(DoubleBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		public Precision getPrecision() {
+			return Precision.DOUBLE;
+		}
+
+		public int size() {
+			return buffer.capacity();
+		}
+
+		public double get(int index) {
+			return buffer.get(index);
+		}
+
+		public void addTo(double[] scores, int offset, int length) {
+			for (int k = 0; k < length; k++) {
+				scores[k] += buffer.get(offset + k);
+			}
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			for (int i = 0; i < buffer.capacity(); i++) {
+				out.writeDouble(buffer.get(i));
+			}
+		}
+	}
+
+	private static final class FloatWeights extends Weights {
+		private final FloatBuffer buffer;
+
+		FloatWeights(FloatBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		public Precision getPrecision() {
+			return Precision.FLOAT;
+		}
+
+		public int size() {
+			return buffer.capacity();
+		}
+
+		public double get(int index) {
+			return buffer.get(index);
+		}
+
+		public void addTo(double[] scores, int offset, int length) {
+			for (int k = 0; k < length; k++) {
+				scores[k] += buffer.get(offset + k);
+			}
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			for (int i = 0; i < buffer.capacity(); i++) {
+				out.writeFloat(buffer.get(i));
+			}
+		}
+	}
+
+	private static final class ShortWeights extends Weights {
+		private final ShortBuffer buffer;
+		private final Scales scales;
+
+		ShortWeights(ShortBuffer buffer, Scales scales) {
+			this.buffer = buffer;
+			this.scales = scales;
+		}
+
+		public Precision getPrecision() {
+			return Precision.INT16;
+		}
+
+		public double getScale(int index) {
+			return scales.get(index);
+		}
+
+		double[] getScales() {
+			return scales.values();
+		}
+
+		public int size() {
+			return buffer.capacity();
+		}
+
+		public double get(int index) {
+			return buffer.get(index) * scales.get(index);
+		}
+
+		public void addTo(double[] scores, int offset, int length) {
+			for (int k = 0; k < length; k++) {
+				scores[k] += buffer.get(offset + k) * scales.get(offset + k);
+			}
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			for (int i = 0; i < buffer.capacity(); i++) {
+				out.writeShort(buffer.get(i));
+			}
+		}
+	}
+
+	private static final class ByteWeights extends Weights {
+		private final ByteBuffer buffer;
+		private final Scales scales;
+
+		ByteWeights(ByteBuffer buffer, Scales scales) {
+			this.buffer = buffer;
+			this.scales = scales;
+		}
+
+		public Precision getPrecision() {
+			return Precision.INT8;
+		}
+
+		public double getScale(int index) {
+			return scales.get(index);
+		}
+
+		double[] getScales() {
+			return scales.values();
+		}
+
+		public int size() {
+			return buffer.capacity();
+		}
+
+		public double get(int index) {
+			return buffer.get(index) * scales.get(index);
+		}
+
+		public void addTo(double[] scores, int offset, int length) {
+			for (int k = 0; k < length; k++) {
+				scores[k] += buffer.get(offset + k) * scales.get(offset + k);
+			}
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			for (int i = 0; i < buffer.capacity(); i++) {
+				out.writeByte(buffer.get(i));
+			}
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package com.nlp.segment;
+
+import com.nlp.segment.dict.Dictionary;
+import com.nlp.segment.preprocess.CharTable;
+import com.nlp.segment.preprocess.NorPreprocessor;
+import com.nlp.segment.token.NorToken;
+import com.nlp.tree.DoubleArrayTrie;
+
+/**
+ * 只用词典的最大概率切分，不需要CRF模型，速度快，适合对延迟敏感的请求
+ * <p>把句子里所有在词典里的词连成一个有向无环图，词的概率是 词频 / 总词频，
+ * 从后往前动态规划找概率乘积最大的路径。词频是0或者不在词典里的单字按词频1算</p>
+ * <p>字符先做半角转全角，和CRF的Lexical特征查词典的方式一样，空白把句子断开，不属于任何词。
+ * 英文串和数字串按{@link NorPreprocessor}的规则是一个整体，和CRF一样不会从中间切开</p>
+ * 加载之后不再修改，可以被多个线程共享，临时空间每个线程一份
+ */
+final class DictionarySegmenter {
+    private final DoubleArrayTrie trie;
+    // log(总词频)
+    private final double logTotal;
+
+    private final ThreadLocal<Workspace> workspaces = new ThreadLocal<Workspace>() {
+        @Override
+        protected Workspace initialValue() {
+            return new Workspace();
+        }
+    };
+
+    DictionarySegmenter(Dictionary dictionary) {
+        this.trie = dictionary.getTrie();
+        this.logTotal = Math.log(Math.max(dictionary.getTotalFrequency(), 1));
+    }
+
+    /**
+     * 切分的临时空间，按见过的最长文本分配，之后重复使用
+     */
+    private static final class Workspace {
+        // 半角转全角以后的文本
+        char[] text = new char[0];
+        // best[i]是从i到片段结尾的最大log概率，next[i]是最优路径上从i开始的词的结尾
+        double[] best = new double[0];
+        int[] next = new int[0];
+        // units[i]是从i开始的Token的结尾，i不是Token的开头的时候是0
+        int[] units = new int[0];
+        int[] lengths = new int[0];
+        int[] values = new int[0];
+
+        void ensureCapacity(int length, int maxWordLength) {
+            if (text.length < length) {
+                int capacity = Math.max(length, text.length * 2);
+                text = new char[capacity];
+                best = new double[capacity + 1];
+                next = new int[capacity + 1];
+                units = new int[capacity + 1];
+            }
+            if (lengths.length < maxWordLength) {
+                lengths = new int[maxWordLength];
+                values = new int[maxWordLength];
+            }
+        }
+    }
+
+    /**
+     * 切分一段文本，词的下标写到spans里面
+     * @param context 文本，首尾没有空白
+     * @param spans 词的开始和结束下标，长度至少是2 * context.length()
+     * @return 词数
+     */
+    int segment(String context, int[] spans) {
+        Workspace workspace = workspaces.get();
+        workspace.ensureCapacity(context.length(), trie.getMaxLength());
+        char[] text = workspace.text;
+        int[] units = workspace.units;
+
+        int spanSize = 0;
+        int begin = -1;
+        for (int i = 0; i <= context.length(); i = units[i]) {
+            boolean whitespace = true;
+            if (i < context.length()) {
+                int entry = CharTable.lookup(context.charAt(i));
+                NorToken.Attr attr = CharTable.attr(entry);
+                whitespace = attr == NorToken.Attr.WHITESPACE;
+                text[i] = CharTable.normalized(entry);
+                units[i] = i + 1;
+                // 汉字和标点单独是一个Token，其他的要扫描到Token的结尾
+                if (attr != NorToken.Attr.CHWORD && attr != NorToken.Attr.PUNCT) {
+                    int end = NorPreprocessor.tokenEnd(context, i);
+                    for (int j = i + 1; j < end; j++) {
+                        text[j] = CharTable.sbc2dbc(context.charAt(j));
+                        units[j] = 0;
+                    }
+                    units[i] = end;
+                }
+            } else {
+                units[i] = i + 1;
+            }
+            if (!whitespace && begin < 0) {
+                begin = i;
+            } else if (whitespace && begin >= 0) {
+                // 空白之间的片段单独切分
+                spanSize = segmentRange(workspace, begin, i, spans, spanSize);
+                begin = -1;
+            }
+        }
+        return spanSize;
+    }
+
+    /**
+     * 切分workspace.text[begin, end)，词的下标追加到spans后面
+     */
+    private int segmentRange(Workspace workspace, int begin, int end, int[] spans, int spanSize) {
+        char[] text = workspace.text;
+        double[] best = workspace.best;
+        int[] next = workspace.next;
+        int[] lengths = workspace.lengths;
+        int[] values = workspace.values;
+
+        int[] units = workspace.units;
+
+        best[end] = 0;
+        for (int i = end - 1; i >= begin; i--) {
+            if (units[i] == 0)
+                continue;
+            // 单个Token总是可以成词，不在词典里的按词频1算
+            best[i] = -logTotal + best[units[i]];
+            next[i] = units[i];
+            int count = trie.commonPrefixSearch(text, i, end, lengths, values);
+            for (int k = 0; k < count; k++) {
+                int wordEnd = i + lengths[k];
+                // 词的结尾要在Token的边界上
+                if (wordEnd < end && units[wordEnd] == 0)
+                    continue;
+                double score = Math.log(Math.max(values[k], 1)) - logTotal + best[wordEnd];
+                // 概率一样的时候取长的词
+                if (score >= best[i]) {
+                    best[i] = score;
+                    next[i] = wordEnd;
+                }
+            }
+        }
+
+        for (int i = begin; i < end; i = next[i]) {
+            spans[2 * spanSize] = i;
+            spans[2 * spanSize + 1] = next[i];
+            spanSize++;
+        }
+        return spanSize;
+    }
+}
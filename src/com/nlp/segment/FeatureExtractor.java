@@ -0,0 +1,178 @@
+package com.nlp.segment;
+
+import com.nlp.crf.FeatureMatrix;
+import com.nlp.segment.feature.EntropyFeature;
+import com.nlp.segment.feature.LexicalFeature;
+import com.nlp.segment.feature.WebdictFeature;
+import com.nlp.segment.feature.WordToVectorFeature;
+import com.nlp.segment.preprocess.BaselinePreprocessor;
+import com.nlp.unsupervised.AccessorVariety;
+import com.nlp.unsupervised.FengAccessorVariety;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 计算CRF的特征，WordSegmenter和ProduceTrainData共用，保证训练和切分的特征一致
+ * 特征按列写到{@link FeatureMatrix}里面，列的顺序是
+ * 字符，字符类型，word2vec，前后向熵(2列)，Lexical(2列)，AV(5列)，Feng AV(5列)，webdict(2列)，
+ * 没有使用的特征不占列
+ * 前面几列只和一个字有关，加载的时候对所有字符算好放在一张表里，每个字只要查一次表
+ * 加载之后不再修改，可以被多个线程共享，FeatureMatrix每个线程一个
+ */
+final class FeatureExtractor {
+    // 是否使用字符类型特征(1列)
+    final boolean useCharType;
+    // word2vec特征(1列)
+    final WordToVectorFeature wordToVectorFeature;
+    // 前后向熵特征(2列)
+    final EntropyFeature entropyFeature;
+    // Lexical特征(2列)
+    final LexicalFeature lexicalFeature;
+    // AV特征(5列)
+    final AccessorVariety accessorVariety;
+    // Feng AV特征(5列)
+    final FengAccessorVariety fengAccessorVariety;
+    // webdict特征(2列)
+    final WebdictFeature webdictFeature;
+
+    // 每一列的Codec
+    private final FeatureMatrix.Codec[] codecs;
+    // 各个特征开始的列，没有使用的特征是-1
+    private final int typeColumn;
+    private final int word2vecColumn;
+    private final int entropyColumn;
+    private final int lexicalColumn;
+    private final int avColumn;
+    private final int fengAvColumn;
+    private final int webdictColumn;
+    // 只和一个字有关的列数，这些列排在最前面
+    private final int charColumnCount;
+    // 每个字符的前charColumnCount列特征，第ch个字符从ch * charColumnCount开始
+    private final int[] charTable;
+
+    FeatureExtractor(boolean useCharType, WordToVectorFeature wordToVectorFeature,
+                     EntropyFeature entropyFeature, LexicalFeature lexicalFeature,
+                     AccessorVariety accessorVariety, FengAccessorVariety fengAccessorVariety,
+                     WebdictFeature webdictFeature) {
+        this.useCharType = useCharType;
+        this.wordToVectorFeature = wordToVectorFeature;
+        this.entropyFeature = entropyFeature;
+        this.lexicalFeature = lexicalFeature;
+        this.accessorVariety = accessorVariety;
+        this.fengAccessorVariety = fengAccessorVariety;
+        this.webdictFeature = webdictFeature;
+
+        List<FeatureMatrix.Codec> codecList = new ArrayList<FeatureMatrix.Codec>();
+        // 字符本身
+        codecList.add(FeatureMatrix.CHAR);
+        typeColumn = useCharType ? addColumns(codecList, FeatureMatrix.CHAR, 1) : -1;
+        word2vecColumn = wordToVectorFeature != null ? addColumns(codecList,
+                FeatureMatrix.symbols(wordToVectorFeature.getTypes()), 1) : -1;
+        entropyColumn = entropyFeature != null ? addColumns(codecList, FeatureMatrix.INT, 2) : -1;
+        charColumnCount = codecList.size();
+        lexicalColumn = lexicalFeature != null ? addColumns(codecList, FeatureMatrix.INT, 2) : -1;
+        avColumn = accessorVariety != null ? addColumns(codecList, FeatureMatrix.INT,
+                ProduceTrainData.MAXIUM_N_GRAM) : -1;
+        fengAvColumn = fengAccessorVariety != null ? addColumns(codecList, FeatureMatrix.INT,
+                ProduceTrainData.MAXIUM_N_GRAM) : -1;
+        // webdict的标记是符号表的下标，输出的时候是O, N, B, E, Y, T, U
+        webdictColumn = webdictFeature != null ? addColumns(codecList,
+                FeatureMatrix.symbols(WebdictFeature.getLabels()), 2) : -1;
+        codecs = codecList.toArray(new FeatureMatrix.Codec[codecList.size()]);
+        charTable = buildCharTable();
+    }
+
+    /**
+     * 对所有的字符算出只和这个字有关的特征
+     */
+    private int[] buildCharTable() {
+        int[] table = new int[(Character.MAX_VALUE + 1) * charColumnCount];
+        for (int ch = 0; ch <= Character.MAX_VALUE; ch++) {
+            char dch = (char) ch;
+            int base = ch * charColumnCount;
+            table[base] = dch;
+            if (typeColumn >= 0)
+                table[base + typeColumn] = BaselinePreprocessor.getTypeStr(
+                        BaselinePreprocessor.judgeCharType(dch)).charAt(0);
+            if (word2vecColumn >= 0)
+                table[base + word2vecColumn] = wordToVectorFeature.queryWordToVecTypeId(dch);
+            // 语料里没有的字符前后向熵都是0
+            if (entropyColumn >= 0 && entropyFeature.contains(dch)) {
+                table[base + entropyColumn] = entropyFeature.getForwardEntropy(dch);
+                table[base + entropyColumn + 1] = entropyFeature.getBackwardEntropy(dch);
+            }
+        }
+        return table;
+    }
+
+    private static int addColumns(List<FeatureMatrix.Codec> codecList, FeatureMatrix.Codec codec, int count) {
+        int column = codecList.size();
+        for (int i = 0; i < count; i++) {
+            codecList.add(codec);
+        }
+        return column;
+    }
+
+    /**
+     * 创建一个空的特征矩阵，列和这里的特征对应
+     */
+    FeatureMatrix newMatrix() {
+        return new FeatureMatrix(codecs);
+    }
+
+    /**
+     * 在矩阵最后加一个字，同时填上只和这个字有关的特征
+     * @param matrix 特征矩阵
+     * @param dch 正规化（全角）以后的字符
+     */
+    void addChar(FeatureMatrix matrix, char dch) {
+        int row = matrix.addRow();
+        int base = dch * charColumnCount;
+        for (int col = 0; col < charColumnCount; col++) {
+            matrix.column(col)[row] = charTable[base + col];
+        }
+    }
+
+    /**
+     * 计算句子级别的特征，有些特征要得到整个句子之后才可以计算
+     * <ul>
+     * <li>Lexical特征: L_{begin}(C_0)和L_{end}(C_0)</li>
+     * <li>AV特征</li>
+     * <li>webdict特征</li>
+     * </ul>
+     * @param matrix 特征矩阵，每个字已经用{@link #addChar}加进去了
+     * @param senten 整个句子正规化以后的内容
+     */
+    void addSentenceFeatures(FeatureMatrix matrix, CharSequence senten) {
+        // 是否需要添加词典特征
+        if (lexicalColumn >= 0) {
+            lexicalFeature.getFeature(senten, matrix.column(lexicalColumn), matrix.column(lexicalColumn + 1));
+        }
+        // 是否需要webdict特征
+        if (webdictColumn >= 0) {
+            webdictFeature.getFeature(senten, matrix.column(webdictColumn), matrix.column(webdictColumn + 1));
+        }
+
+        if (avColumn < 0 && fengAvColumn < 0)
+            return;
+        // AV特征按去掉首尾空白的句子计算
+        String sentenStr = senten.toString().trim();
+        // 是否需要AV特征
+        if (avColumn >= 0) {
+            // ngram从[1~5]
+            for (int n = 1; n <= ProduceTrainData.MAXIUM_N_GRAM; n++) {
+                int[] ngramFeature = accessorVariety.ngramFeature(n, sentenStr);
+                System.arraycopy(ngramFeature, 0, matrix.column(avColumn + n - 1), 0, ngramFeature.length);
+            }
+        }
+        // 是否需要Feng AV特征
+        if (fengAvColumn >= 0) {
+            // ngram从[1~5]
+            for (int n = 1; n <= ProduceTrainData.MAXIUM_N_GRAM; n++) {
+                int[] ngramFeature = fengAccessorVariety.ngramFeature(n, sentenStr);
+                System.arraycopy(ngramFeature, 0, matrix.column(fengAvColumn + n - 1), 0, ngramFeature.length);
+            }
+        }
+    }
+}
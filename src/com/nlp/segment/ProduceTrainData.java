@@ -4,11 +4,11 @@ import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
 import com.google.common.base.CharMatcher;
-import com.nlp.segment.preprocess.BaselinePreprocessor;
+import com.nlp.crf.FeatureMatrix;
+import com.nlp.segment.dict.DictionaryRegistry;
+import com.nlp.segment.preprocess.CharTable;
 import com.nlp.segment.feature.LexicalFeature;
-import com.nlp.segment.preprocess.Preprocessor;
-import com.nlp.segment.token.NorToken;
-import com.nlp.segment.token.Token;
+import com.nlp.segment.feature.WebdictFeature;
 import com.nlp.unsupervised.AccessorVariety;
 import com.nlp.segment.feature.EntropyFeature;
 import com.nlp.segment.feature.WordToVectorFeature;
@@ -42,6 +42,9 @@ class FeatureOptions {
     @Parameter(names = "-fengav", description = "Count Feng Accessor Variety feature from which raw file", arity = 1)
     String fengAccessorVarietyFile;
 
+    @Parameter(names = "-webdict", description = "Count webdict B/E/Y feature from which dict file", arity = 1)
+    String webdictFile;
+
     @Parameter(names = "-h", help = true, description = "Show help information")
     boolean help;
 
@@ -59,52 +62,52 @@ class FeatureOptions {
 public class ProduceTrainData {
     // 是否采用逗号且分句子效果差不多，用逗号可以保证计算AV值时候的一致性
     protected Pattern punct = Pattern.compile("^(,+|\\?+|!+|;+|，+|。+|！+|？+|；+)$");
-    // 是否使用字符类型特征
-    private boolean useCharType;
-    // word2vec特征
-    private WordToVectorFeature wordToVectorFeature;
-    // 前后向熵特征
-    private EntropyFeature entropyFeature;
-    // Lexical特征
-    private LexicalFeature lexicalFeature;
     // 下面这两个无监督计算比较慢，吃内存，因为用到了后缀数组来加速计算
     public static final int MAXIUM_N_GRAM = 5;
-    // AV特征
-    private AccessorVariety accessorVariety;
-    // Feng AV特征
-    private FengAccessorVariety fengAccessorVariety;
+    // 特征，和WordSegmenter用的是同一套
+    private FeatureExtractor featureExtractor;
 
     public ProduceTrainData(FeatureOptions options) throws IOException {
-        // 是否使用字符类型特征
-        useCharType = options.useCharType;
-
         // 使用word2vec特征
+        WordToVectorFeature wordToVectorFeature = null;
         if (options.word2vecFile != null)
             wordToVectorFeature = new WordToVectorFeature(options.word2vecFile);
 
         // 使用前后熵特征
+        EntropyFeature entropyFeature = null;
         if (options.entropyFile != null)
             entropyFeature = new EntropyFeature(options.entropyFile);
 
         // Lexical特征
+        LexicalFeature lexicalFeature = null;
         if (options.lexicalFile != null)
             lexicalFeature = new LexicalFeature(options.lexicalFile);
 
         // AV特征
+        AccessorVariety accessorVariety = null;
         if (options.accessorVarietyFile != null)
             accessorVariety = new AccessorVariety(options.accessorVarietyFile);
 
         // Feng AV特征
+        FengAccessorVariety fengAccessorVariety = null;
         if (options.fengAccessorVarietyFile != null)
             fengAccessorVariety = new FengAccessorVariety(options.fengAccessorVarietyFile);
 
+        // webdict特征，词典读不到的时候直接报错，不要用空词典生成训练数据
+        WebdictFeature webdictFeature = null;
+        if (options.webdictFile != null)
+            webdictFeature = new WebdictFeature(DictionaryRegistry.get(options.webdictFile, "UTF-8"));
+
+        // 字符类型特征由-type控制，和WordSegmenter用同样的方法计算特征
+        featureExtractor = new FeatureExtractor(options.useCharType, wordToVectorFeature,
+                entropyFeature, lexicalFeature, accessorVariety, fengAccessorVariety, webdictFeature);
+
         // 输入文件
         process(options.inputFilename, options.outputFilename, "UTF-8", "UTF-8");
     }
 
     public void process(String inputFilename, String outputFilename,
                         String inputCharset, String outputCharset) throws IOException {
-        Preprocessor preprocessor = new BaselinePreprocessor();
         BufferedReader br = null;
         PrintWriter pw = null;
 
@@ -122,24 +125,22 @@ public class ProduceTrainData {
                 }
                 boolean hasToken = false;
 
-                List<NorToken> senten = new ArrayList<NorToken>();
+                StringBuilder senten = new StringBuilder();
                 List<String> tags = new ArrayList<String>();
-                List<ArrayList<String>> sentenFeature = new ArrayList<ArrayList<String>>();
+                FeatureMatrix sentenFeature = featureExtractor.newMatrix();
 
                 while (tokenizer.hasMoreTokens()) {
                     String field = tokenizer.nextToken();
                     if (!hasToken) {
                         hasToken = true;
                     }
-                    List<Token> tokens = preprocessor.process(field);
                     String tag, lastTag = null;
-                    for (int i = 0; i < tokens.size(); ++i) {
-                        NorToken token = (NorToken) tokens.get(i);
-                        if (tokens.size() == 1) {
+                    for (int i = 0; i < field.length(); ++i) {
+                        if (field.length() == 1) {
                             tag = "S";
                         } else if (i == 0) {
                             tag = "B";
-                        } else if (i + 1 == tokens.size()) {
+                        } else if (i + 1 == field.length()) {
                             tag = "E";
                         } else if ("B".equals(lastTag)) {
                             tag = "B2";
@@ -149,44 +150,23 @@ public class ProduceTrainData {
                             tag = "M";
                         }
 
-                        // 往句子里面一个Token
-                        senten.add(token);
-                        // 这个Token对应的tag(B,B2,B3,M,E,S)
+                        // 半角转全角
+                        char dch = CharTable.sbc2dbc(field.charAt(i));
+                        // 往句子里面一个字
+                        senten.append(dch);
+                        // 这个字对应的tag(B,B2,B3,M,E,S)
                         tags.add(tag);
-
-                        // 一个Token的特征
-                        ArrayList<String> tokenFeature = new ArrayList<String>();
-                        tokenFeature.add(token.getNorText());  // 字符特征
-                        // 是否需要添加字符类型特征
-                        if (useCharType)
-                            tokenFeature.add(BaselinePreprocessor.getTypeStr(token.getAttr()));
-                        // 是否需要添加word2vec特征
-                        if (wordToVectorFeature != null)
-                            tokenFeature.add(wordToVectorFeature.queryWordToVecType(token.getNorText()));
-                        // 是否添加熵特征
-                        if (entropyFeature != null) {
-                            tokenFeature.add(String.valueOf(entropyFeature.
-                                    getForwardEntropy(token.getNorText().charAt(0))));
-                            tokenFeature.add(String.valueOf(entropyFeature.
-                                    getBackwardEntropy(token.getNorText().charAt(0))));
-                        }
-                        sentenFeature.add(tokenFeature);  // 加入这个Token的各种特征
+                        // 加入这个字的各种特征
+                        featureExtractor.addChar(sentenFeature, dch);
 
                         lastTag = tag;
                     }
                     wordCount++;
                     matcher = punct.matcher(field);
                     if (matcher.matches()) {
-                        sentenFeature = getSentenLevelFeature(sentenFeature, senten);
-                        for (int senIndex = 0; senIndex < senten.size(); senIndex++) {
-                            for (String tempFeature: sentenFeature.get(senIndex)) {
-                                pw.print(tempFeature + "\t");
-                            }
-                            pw.println(tags.get(senIndex));
-                        }
-                        pw.println();
+                        writeSenten(pw, sentenFeature, senten, tags);
                         // 清空句子，特征和对应的tag
-                        senten.clear();
+                        senten.setLength(0);
                         sentenFeature.clear();
                         tags.clear();
 
@@ -194,14 +174,7 @@ public class ProduceTrainData {
                     }
                 }
                 if (hasToken) {
-                    sentenFeature = getSentenLevelFeature(sentenFeature, senten);
-                    for (int senIndex = 0; senIndex < senten.size(); senIndex++) {
-                        for (String tempFeature: sentenFeature.get(senIndex)) {
-                            pw.print(tempFeature + "\t");
-                        }
-                        pw.println(tags.get(senIndex));
-                    }
-                    pw.println();
+                    writeSenten(pw, sentenFeature, senten, tags);
                 }
                 lineCount++;
                 if (lineCount % 1000 == 0) {
@@ -221,50 +194,23 @@ public class ProduceTrainData {
     }
 
     /**
-     * 计算句子级别的特征，有些特征要得到整个句子之后才可以计算
-     * <ul>
-     * <li>Lexical特征: L_{begin}(C_0)和L_{end}(C_0)</li>
-     * <li>AV特征</li>
-     * </ul>
-     * @param sentenFeature 存储句子里面每个Token的特征
-     * @param senten 整个句子包含的Token
-     * @return 句子中每个Token的特征
+     * 计算句子级别的特征，然后把整个句子按CRF++训练数据的格式输出，
+     * 每个字一行，最后一列是tag，句子之间空一行
+     * @param pw 输出
+     * @param sentenFeature 句子里面每个字的特征
+     * @param senten 整个句子正规化以后的内容
+     * @param tags 每个字的tag
      */
-    private List<ArrayList<String>> getSentenLevelFeature(
-            List<ArrayList<String>> sentenFeature, List<NorToken> senten) {
-        // 是否需要添加词典特征
-        if (lexicalFeature != null) {
-            List<String[]> lexicalFeatures = lexicalFeature.getFeature(senten);
-            // lexical特征
-            for (int senIndex = 0; senIndex < senten.size(); senIndex++) {
-                String[] tempFeatures = lexicalFeatures.get(senIndex);
-                // 这个特征有两列
-                sentenFeature.get(senIndex).add(tempFeatures[0]);
-                sentenFeature.get(senIndex).add(tempFeatures[1]);
-            }
-        }
-        // 是否需要AV特征
-        if (accessorVariety != null) {
-            // ngram从[1~5]
-            for (int n = 1; n <= MAXIUM_N_GRAM; n++) {
-                int[] ngramFeature = accessorVariety.sentenNgramFeature(n, senten);
-                for (int i = 0; i < ngramFeature.length; i++) {
-                    sentenFeature.get(i).add(String.valueOf(ngramFeature[i]));
-                }
-            }
+    private void writeSenten(PrintWriter pw, FeatureMatrix sentenFeature,
+                             CharSequence senten, List<String> tags) {
+        featureExtractor.addSentenceFeatures(sentenFeature, senten);
+        StringBuilder sb = new StringBuilder();
+        for (int senIndex = 0; senIndex < sentenFeature.size(); senIndex++) {
+            sentenFeature.appendRow(sb, senIndex);
+            sb.append('\t').append(tags.get(senIndex)).append('\n');
         }
-        // 是否需要Feng AV特征
-        if (fengAccessorVariety != null) {
-            // ngram从[1~5]
-            for (int n = 1; n <= MAXIUM_N_GRAM; n++) {
-                int[] ngramFeature = fengAccessorVariety.sentenNgramFeature(n, senten);
-                for (int i = 0; i < ngramFeature.length; i++) {
-                    sentenFeature.get(i).add(String.valueOf(ngramFeature[i]));
-                }
-            }
-        }
-
-        return sentenFeature;
+        pw.print(sb);
+        pw.println();
     }
 
     public static void main(String[] args) throws IOException {
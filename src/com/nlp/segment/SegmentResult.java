@@ -0,0 +1,91 @@
+package com.nlp.segment;
+
+import com.nlp.segment.token.Token;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 切分的结果，只保存每个词在原始文本里的开始和结束下标，
+ * 第i个词是text[offsets[2 * i], offsets[2 * i + 1])
+ * 词的内容只有在需要的时候才生成
+ */
+public final class SegmentResult {
+    private final String text;
+    private final int[] offsets;
+    private final int size;
+
+    SegmentResult(String text, int[] offsets, int size) {
+        this.text = text;
+        this.offsets = offsets;
+        this.size = size;
+    }
+
+    /**
+     * 切分的原始文本
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * 词的个数
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getBegin(int index) {
+        checkIndex(index);
+        return offsets[2 * index];
+    }
+
+    public int getEnd(int index) {
+        checkIndex(index);
+        return offsets[2 * index + 1];
+    }
+
+    /**
+     * 第index个词，返回的是原始文本上的视图，不复制字符
+     */
+    public CharSequence getWord(int index) {
+        checkIndex(index);
+        return CharBuffer.wrap(text, offsets[2 * index], offsets[2 * index + 1]);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+    }
+
+    /**
+     * 把每个词后面加一个空格追加到sb，和分词结果文件的格式一样
+     */
+    public StringBuilder appendTo(StringBuilder sb) {
+        for (int i = 0; i < size; i++) {
+            sb.append(text, offsets[2 * i], offsets[2 * i + 1]).append(' ');
+        }
+        return sb;
+    }
+
+    /**
+     * 转换成Token的列表，兼容以前的接口
+     */
+    public List<Token> toTokens() {
+        List<Token> tokens = new ArrayList<Token>(size);
+        for (int i = 0; i < size; i++) {
+            tokens.add(new Token(text, offsets[2 * i], offsets[2 * i + 1]));
+        }
+        return tokens;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = appendTo(new StringBuilder());
+        // 去掉最后一个空格
+        if (sb.length() > 0)
+            sb.setLength(sb.length() - 1);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,212 @@
+package com.nlp.segment;
+
+import com.nlp.crf.CRFTagger;
+import com.nlp.crf.Tagger;
+import com.nlp.segment.dict.DictionaryRegistry;
+import com.nlp.segment.dict.UserDictionary;
+import com.nlp.segment.feature.EntropyFeature;
+import com.nlp.segment.feature.LexicalFeature;
+import com.nlp.segment.feature.WebdictFeature;
+import com.nlp.segment.feature.WordToVectorFeature;
+import com.nlp.segment.postprocess.*;
+import com.nlp.unsupervised.AccessorVariety;
+import com.nlp.unsupervised.FengAccessorVariety;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * 分词用到的模型和特征数据，根据config文件加载一次，加载之后不再修改
+ * CRF模型、词典、后缀数组这些东西很占内存，多个线程共享同一个SegmenterModel，
+ * 每个线程用{@link WordSegmenter#WordSegmenter(SegmenterModel)}创建自己的分词器，
+ * 分词器里面只有很小的临时缓冲区
+ * <p>engine = dict 的时候不加载CRF模型和特征，只用dict_filename指定的词频词典做最大概率切分，
+ * 后处理和用户词典两种方式一样</p>
+ * <p>配置了用户词典的时候，不用了要调用{@link #close()}停止检查用户词典文件</p>
+ */
+public final class SegmenterModel implements Closeable {
+    // CRF模型，只用词典切分的时候是null
+    final Tagger tagger;
+    // 只用词典的最大概率切分，用CRF的时候是null
+    final DictionarySegmenter dictionarySegmenter;
+    // 是否使用字符类型特征(1列)
+    final boolean useCharType;
+    // word2vec特征(1列)
+    final WordToVectorFeature wordToVectorFeature;
+    // 前后向熵特征(2列)
+    final EntropyFeature entropyFeature;
+    // Lexical特征(2列)
+    final LexicalFeature lexicalFeature;
+    // 下面这两个无监督计算比较慢，吃内存，因为用到了后缀数组来加速计算
+    final AccessorVariety accessorVariety;
+    // Feng AV特征（原始的AV定义）
+    final FengAccessorVariety fengAccessorVariety;
+    // webdict特征(2列)
+    final WebdictFeature webdictFeature;
+    // 是否输出调试信息
+    final boolean debug;
+    // 是否使用后处理
+    final boolean usePostprocess;
+    // 后处理
+    // 合并被切开的网址、英文和数字
+    final SpanMerger spanMerger;
+    final CombinePostProcessor combinePostProcessor;
+    // 用户词典，可以在运行的时候修改，没有配置就是null
+    final UserDictionary userDictionary;
+    final UserWordMerger userWordMerger;
+    // 根据上面的特征计算每个字的特征列
+    final FeatureExtractor featureExtractor;
+
+    public SegmenterModel(String propertiesFilename, String charset) throws IOException {
+        this(WordSegmenter.loadProperties(propertiesFilename, charset));
+    }
+
+    public SegmenterModel(Properties properties) throws IOException {
+        String textModelFilename = properties.getProperty("text_model_filename");
+        String textModelCharset = properties.getProperty("text_model_file_charset", "UTF-8");
+        boolean textModelIsGZipped = Boolean.parseBoolean(properties.getProperty("text_model_is_gzipped", "true"));
+
+        // 切分方法，crf或者dict，默认用crf
+        String engine = properties.getProperty("engine", "crf").trim();
+        boolean useCRF;
+        if (engine.equals("crf")) {
+            useCRF = true;
+            dictionarySegmenter = null;
+        } else if (engine.equals("dict")) {
+            useCRF = false;
+            String dictFilename = properties.getProperty("dict_filename");
+            if (dictFilename == null || dictFilename.trim().isEmpty())
+                throw new IllegalArgumentException("engine=dict requires dict_filename");
+            dictionarySegmenter = new DictionarySegmenter(DictionaryRegistry.get(
+                    dictFilename.trim(), properties.getProperty("dict_file_charset", "UTF-8")));
+        } else {
+            throw new IllegalArgumentException("unknown engine: " + engine);
+        }
+
+        // 是否进入调试模式
+        debug = Boolean.parseBoolean(properties.getProperty("debug", "false"));
+        // 是否使用字符类型特征，默认使用
+        useCharType = useCRF && Boolean.parseBoolean(properties.getProperty("use_char_type_feature", "true"));
+        // 下面的特征只有CRF用到
+        // 是否使用word2vec特征
+        if (useCRF && properties.getProperty("use_word2vec_feature") != null)
+            wordToVectorFeature = new WordToVectorFeature(properties.getProperty("use_word2vec_feature"));
+        else
+            wordToVectorFeature = null;
+        // 是否使用前后向熵特征
+        if (useCRF && properties.getProperty("use_entropy_feature") != null)
+            entropyFeature = new EntropyFeature(properties.getProperty("use_entropy_feature"));
+        else
+            entropyFeature = null;
+        // 是否使用Lexical特征
+        if (useCRF && properties.getProperty("use_lexical_feature") != null)
+            lexicalFeature = new LexicalFeature(properties.getProperty("use_lexical_feature"));
+        else
+            lexicalFeature = null;
+        // 是否使用AV特征
+        if (useCRF && properties.getProperty("use_av_feature") != null)
+            accessorVariety = new AccessorVariety(properties.getProperty("use_av_feature"));
+        else
+            accessorVariety = null;
+        // 是否使用Feng AV
+        if (useCRF && properties.getProperty("use_fengav_feature") != null)
+            fengAccessorVariety = new FengAccessorVariety(properties.getProperty("use_fengav_feature"));
+        else
+            fengAccessorVariety = null;
+        // 是否使用webdict特征
+        if (useCRF && properties.getProperty("use_webdict_feature") != null)
+            webdictFeature = new WebdictFeature(DictionaryRegistry.get(
+                    properties.getProperty("use_webdict_feature"), "UTF-8"));
+        else
+            webdictFeature = null;
+        if (useCRF)
+            featureExtractor = new FeatureExtractor(useCharType, wordToVectorFeature, entropyFeature,
+                    lexicalFeature, accessorVariety, fengAccessorVariety, webdictFeature);
+        else
+            featureExtractor = null;
+        // 是否使用后处理
+        usePostprocess = Boolean.parseBoolean(properties.getProperty("use_postprocess", "true"));
+        // 包括以下几个部分
+        if (usePostprocess) {
+            // 对Token进行合并看看能不能在词典里面找到
+            combinePostProcessor = new CombinePostProcessor(properties);
+            spanMerger = new SpanMerger();
+        } else {
+            combinePostProcessor = null;
+            spanMerger = null;
+        }
+
+        // 用户词典，切分结果里面连续的几个词拼起来在用户词典里就合并成一个词
+        // 每隔多少秒检查一次用户词典有没有修改，0表示不检查
+        long reloadInterval = Long.parseLong(properties.getProperty("user_dict_reload_interval", "10"));
+        if (properties.getProperty("user_dict_filename") != null) {
+            userDictionary = new UserDictionary(properties.getProperty("user_dict_filename"),
+                    properties.getProperty("user_dict_charset", "UTF-8"));
+            userWordMerger = new UserWordMerger(userDictionary);
+        } else {
+            userDictionary = null;
+            userWordMerger = null;
+        }
+
+        // 输出调试信息，告诉用户我们都使用了哪些特征
+        if (debug)
+            outputFeatureDebugInfo();
+
+        // 文本模型和二进制模型都可以，根据文件头自动判断
+        if (useCRF) {
+            File textModelFile = new File(textModelFilename);
+            tagger = CRFTagger.load(textModelFile, textModelIsGZipped, textModelCharset);
+        } else {
+            tagger = null;
+        }
+
+        // 最后再开始检查用户词典，前面加载失败的时候没有后台任务要停
+        if (userDictionary != null && reloadInterval > 0)
+            userDictionary.startWatching(reloadInterval * 1000);
+    }
+
+    /**
+     * 输出当前使用哪些特征的信息
+     */
+    private void outputFeatureDebugInfo() {
+        if (useCharType)
+            System.out.println("Using Char Type Feature");
+        if (wordToVectorFeature != null)
+            System.out.println("Using Word2vec Feature");
+        if (entropyFeature != null)
+            System.out.println("Using Forward and Backward Entropy Feature");
+        if (lexicalFeature != null)
+            System.out.println("Using Lexical Feature");
+        if (accessorVariety != null)
+            System.out.println("Using Accessor Variety N-gram Feature");
+        if (webdictFeature != null)
+            System.out.println("Using Webdict Feature");
+    }
+
+    /**
+     * @return CRF模型，engine = dict的时候是null
+     */
+    public Tagger getTagger() {
+        return tagger;
+    }
+
+    /**
+     * @return 用户词典，可以调用{@link UserDictionary#addWord(String, int)}和{@link UserDictionary#reload()}，
+     * 没有配置user_dict_filename就是null
+     */
+    public UserDictionary getUserDictionary() {
+        return userDictionary;
+    }
+
+    /**
+     * 停止检查用户词典文件，没有配置用户词典的时候什么都不做
+     * 模型本身还可以继续用，只是用户词典不会再更新
+     */
+    @Override
+    public void close() {
+        if (userDictionary != null)
+            userDictionary.close();
+    }
+}
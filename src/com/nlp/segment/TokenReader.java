@@ -0,0 +1,171 @@
+package com.nlp.segment;
+
+import com.google.common.base.CharMatcher;
+import com.nlp.segment.preprocess.CharTable;
+import com.nlp.segment.token.Token;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * 流式分词，从Reader里面边读边切，用法和BufferedReader.readLine一样
+ * <pre>
+ * TokenReader tokenReader = segmenter.segment(reader);
+ * Token token;
+ * while ((token = tokenReader.read()) != null) {
+ *     ...
+ * }
+ * tokenReader.close();
+ * </pre>
+ * 输入按块读进来，每块在句子边界切开以后交给{@link WordSegmenter#segmentResult(String)}，
+ * 所以不管输入多大（比如没有换行的网页），占用的内存只和块的大小有关
+ * <p>切块的位置按优先级选：空白，全角的，！？；。，半角的,!?;，
+ * 一块里面都找不到的话直接在块的末尾切开。空白和标点本来就是分句的位置，
+ * 所以CRF的结果和整行切分一样，只是后处理（合并、网址、英文、数字）不会跨过切块的位置</p>
+ * <p>返回的Token的下标是相对于整个输入的（包括块之间被跳过的空白），
+ * context是所在的块，{@link StreamToken#getChunkOffset()}是块在输入里的开始位置</p>
+ */
+public class TokenReader implements Closeable {
+    // 默认的块大小
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    private final WordSegmenter segmenter;
+    private final Reader reader;
+    // 读进来还没有切分的字符，最多2倍块大小
+    private final char[] buffer;
+    private final int chunkSize;
+    private int length;
+    private boolean eof;
+    // 当前块在输入里的开始位置，和下一块的开始位置
+    private int chunkOffset;
+    private int nextChunkOffset;
+    // 当前块切分的结果，和下一个要返回的词
+    private SegmentResult result;
+    private int index;
+
+    public TokenReader(WordSegmenter segmenter, Reader reader) {
+        this(segmenter, reader, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param segmenter 分词器
+     * @param reader 输入
+     * @param chunkSize 块大小，每块最少读chunkSize个字符再找切分的位置
+     */
+    public TokenReader(WordSegmenter segmenter, Reader reader, int chunkSize) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("chunk size must be positive: " + chunkSize);
+        this.segmenter = segmenter;
+        this.reader = reader;
+        this.chunkSize = chunkSize;
+        this.buffer = new char[chunkSize * 2];
+    }
+
+    /**
+     * 读下一个Token
+     * @return 下一个Token，下标是相对于整个输入的，输入结束的时候返回null
+     */
+    public StreamToken read() throws IOException {
+        while (result == null || index >= result.size()) {
+            String chunk = nextChunk();
+            if (chunk == null)
+                return null;
+            chunkOffset = nextChunkOffset;
+            nextChunkOffset += chunk.length();
+            result = segmenter.segmentResult(chunk);
+            index = 0;
+        }
+        StreamToken token = new StreamToken(result.getText(), chunkOffset,
+                result.getBegin(index), result.getEnd(index));
+        index++;
+        return token;
+    }
+
+    /**
+     * 读下一块，输入结束的时候返回null
+     */
+    private String nextChunk() throws IOException {
+        while (!eof && length < buffer.length) {
+            int n = reader.read(buffer, length, buffer.length - length);
+            if (n < 0)
+                eof = true;
+            else
+                length += n;
+        }
+        if (length == 0)
+            return null;
+
+        int cut = eof ? length : cutPosition();
+        String chunk = new String(buffer, 0, cut);
+        System.arraycopy(buffer, cut, buffer, 0, length - cut);
+        length -= cut;
+        return chunk;
+    }
+
+    /**
+     * 在chunkSize之后找切开的位置，返回切开以后第二块的开始位置
+     */
+    private int cutPosition() {
+        int punct = -1, asciiPunct = -1;
+        for (int i = length - 1; i >= chunkSize; i--) {
+            char c = buffer[i];
+            if (CharMatcher.WHITESPACE.matches(c)) {
+                return i + 1;
+            } else if (punct < 0 && (c == '，' || c == '！' || c == '？' || c == '；' || c == '。')) {
+                punct = i + 1;
+            } else if (asciiPunct < 0 && isAsciiBoundary(c)) {
+                asciiPunct = i + 1;
+            }
+        }
+        if (punct >= 0)
+            return punct;
+        if (asciiPunct >= 0)
+            return asciiPunct;
+        // 找不到句子边界，不要把代理对切开
+        return Character.isHighSurrogate(buffer[length - 1]) ? length - 1 : length;
+    }
+
+    /**
+     * 半角的,!?;在预处理的时候会转成全角，所以也是分句的位置
+     */
+    private static boolean isAsciiBoundary(char c) {
+        char dch = CharTable.sbc2dbc(c);
+        return c != dch && (dch == '，' || dch == '！' || dch == '？' || dch == '；');
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * 流式分词得到的Token，下标是相对于整个输入的，context只是所在的块
+     */
+    public static final class StreamToken extends Token {
+        private final int chunkOffset;
+
+        /**
+         * @param chunk 所在的块
+         * @param chunkOffset 块在输入里的开始位置
+         * @param beginIndex 词在块里的开始位置
+         * @param endIndex 词在块里的结束位置
+         */
+        StreamToken(String chunk, int chunkOffset, int beginIndex, int endIndex) {
+            super(chunk, chunkOffset + beginIndex, chunkOffset + endIndex);
+            this.chunkOffset = chunkOffset;
+        }
+
+        /**
+         * @return 所在的块（context）在输入里的开始位置
+         */
+        public int getChunkOffset() {
+            return chunkOffset;
+        }
+
+        @Override
+        public String toString() {
+            return getContext().substring(getBeginIndex() - chunkOffset, getEndIndex() - chunkOffset);
+        }
+    }
+}
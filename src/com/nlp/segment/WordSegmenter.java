@@ -1,101 +1,47 @@
 package com.nlp.segment;
 
 import com.google.common.base.CharMatcher;
-import com.google.common.base.Joiner;
-import com.nlp.crf.CRFTagger;
+import com.nlp.crf.FeatureMatrix;
 import com.nlp.crf.Tagger;
-import com.nlp.segment.postprocess.*;
-import com.nlp.segment.preprocess.BaselinePreprocessor;
-import com.nlp.segment.feature.LexicalFeature;
-import com.nlp.segment.preprocess.Preprocessor;
+import com.nlp.segment.preprocess.CharTable;
 import com.nlp.segment.token.NorToken;
 import com.nlp.segment.token.Token;
-import com.nlp.unsupervised.AccessorVariety;
-import com.nlp.segment.feature.EntropyFeature;
-import com.nlp.segment.feature.WordToVectorFeature;
-import com.nlp.unsupervised.FengAccessorVariety;
 import org.apache.commons.io.FileUtils;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * 利用训练好的CRF模型进行分词
- * 利用config文件来控制特征的选择
+ * 利用config文件来控制特征的选择，engine = dict的时候不用CRF，只用词典做最大概率切分
+ * 模型放在{@link SegmenterModel}里面，可以被多个WordSegmenter共享，
+ * 一个WordSegmenter同一时间只能在一个线程里面使用
  */
 public class WordSegmenter {
-    private static final String SINGLE_TAG = "S";
-    private static final String END_TAG = "E";
-
-    private Preprocessor preprocessor;
-    private Tagger tagger;
-    // 是否使用字符类型特征(1列)
-    private boolean useCharType;
-    // word2vec特征(1列)
-    private WordToVectorFeature wordToVectorFeature;
-    // 前后向熵特征(2列)
-    private EntropyFeature entropyFeature;
-    // Lexical特征(2列)
-    private LexicalFeature lexicalFeature;
-    // 下面这两个无监督计算比较慢，吃内存，因为用到了后缀数组来加速计算
-    private AccessorVariety accessorVariety;
-    // Feng AV特征（原始的AV定义）
-    private FengAccessorVariety fengAccessorVariety;
-    // 是否输出调试信息
-    private boolean debug;
-    // 是否使用后处理
-    private boolean usePostprocess;
-    // 后处理
-    AlignProcessor processUrl = null;
-    AlignProcessor processEnglish = null;
-    AlignProcessor processDigit = null;
-    CombinePostProcessor combinePostProcessor = null;
+    // 并行切分的时候每次提交给线程池的行数
+    private static final int CHUNK_LINES = 256;
+
+    // 共享的模型，不会被修改
+    private final SegmenterModel model;
+    // 下面这些字段都是从model里面取出来的，方便使用
+    private final Tagger tagger;
+    private final FeatureExtractor featureExtractor;
+    private final boolean debug;
+    private final boolean usePostprocess;
+    // 存放标签下标，每个分词器一份，所以WordSegmenter本身不是线程安全的
+    private int[] tagIds = new int[0];
+    // 存放后处理之前的词下标
+    private int[] spans = new int[0];
+    // 当前句子的特征
+    private final FeatureMatrix sentenFeature;
 
     public WordSegmenter(String propertiesFilename, String charset) throws IOException {
-        Properties properties = new Properties();
-        Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(propertiesFilename), charset));
-        properties.load(reader);
-        String textModelFilename = properties.getProperty("text_model_filename");
-        String textModelCharset = properties.getProperty("text_model_file_charset", "UTF-8");
-        boolean textModelIsGZipped = Boolean.parseBoolean(properties.getProperty("text_model_is_gzipped", "true"));
-
-        // 是否进入调试模式
-        debug = Boolean.parseBoolean(properties.getProperty("debug", "false"));
-        // 是否使用字符类型特征，默认使用
-        useCharType = Boolean.parseBoolean(properties.getProperty("use_char_type_feature", "true"));
-        // 是否使用word2vec特征
-        if (properties.getProperty("use_word2vec_feature") != null)
-            wordToVectorFeature = new WordToVectorFeature(properties.getProperty("use_word2vec_feature"));
-        // 是否使用前后向熵特征
-        if (properties.getProperty("use_entropy_feature") != null)
-            entropyFeature = new EntropyFeature(properties.getProperty("use_entropy_feature"));
-        // 是否使用Lexical特征
-        if (properties.getProperty("use_lexical_feature") != null)
-            lexicalFeature = new LexicalFeature(properties.getProperty("use_lexical_feature"));
-        // 是否使用AV特征
-        if (properties.getProperty("use_av_feature") != null)
-            accessorVariety = new AccessorVariety(properties.getProperty("use_av_feature"));
-        // 是否使用Feng AV
-        if (properties.getProperty("use_fengav_feature") != null)
-            fengAccessorVariety = new FengAccessorVariety(properties.getProperty("use_fengav_feature"));
-        // 是否使用后处理
-        usePostprocess = Boolean.parseBoolean(properties.getProperty("use_postprocess", "true"));
-        // 包括以下几个部分
-        if (usePostprocess) {
-            // 对Token进行合并看看能不能在词典里面找到
-            combinePostProcessor = new CombinePostProcessor(properties);
-            processUrl = new ProcessUrl();
-            processEnglish = new ProcessEnglish();
-            processDigit = new ProcessDigit();
-        }
-
-        // 输出调试信息，告诉用户我们都使用了哪些特征
-        if (debug)
-            outputFeatureDebugInfo();
+        this(new SegmenterModel(propertiesFilename, charset));
+    }
 
-        File textModelFile = new File(textModelFilename);
-        tagger = new CRFTagger(textModelFile, textModelIsGZipped, textModelCharset);
-        preprocessor = new BaselinePreprocessor();
+    public WordSegmenter(Properties properties) throws IOException {
+        this(new SegmenterModel(properties));
     }
 
     public WordSegmenter(String propertiesFilename) throws IOException {
@@ -103,234 +49,295 @@ public class WordSegmenter {
     }
 
     /**
-     * 输出当前使用哪些特征的信息
+     * 在已经加载好的模型上创建分词器，不会重新加载模型，开销很小
+     * 多个线程共享一个模型的时候，每个线程创建一个自己的分词器
+     * @param model 加载好的模型
      */
-    private void outputFeatureDebugInfo() {
-        if (useCharType)
-            System.out.println("Using Char Type Feature");
-        if (wordToVectorFeature != null)
-            System.out.println("Using Word2vec Feature");
-        if (entropyFeature != null)
-            System.out.println("Using Forward and Backward Entropy Feature");
-        if (lexicalFeature != null)
-            System.out.println("Using Lexical Feature");
-        if (accessorVariety != null)
-            System.out.println("Using Accessor Variety N-gram Feature");
+    public WordSegmenter(SegmenterModel model) {
+        this.model = model;
+        this.tagger = model.tagger;
+        this.featureExtractor = model.featureExtractor;
+        // 只用词典切分的时候没有特征
+        this.sentenFeature = featureExtractor != null ? featureExtractor.newMatrix() : null;
+        this.debug = model.debug;
+        this.usePostprocess = model.usePostprocess;
     }
 
-    private List<NorToken> crfTag(String context, List<Token> preTokens, int offset, String[] tags) {
-        List<NorToken> postTokens = new ArrayList<NorToken>();
-        StringBuilder textSB = new StringBuilder();
-        int beginIndex = -1;
-        for (int index = 0; index < tags.length; index++) {
-            String tag = tags[index];
+    public SegmenterModel getModel() {
+        return model;
+    }
 
-            NorToken preToken = (NorToken) preTokens.get(offset + index);
+    public static Properties loadProperties(String propertiesFilename, String charset) throws IOException {
+        Properties properties = new Properties();
+        Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(propertiesFilename), charset));
+        try {
+            properties.load(reader);
+        } finally {
+            reader.close();
+        }
+        return properties;
+    }
 
-            if (tag.equals("B")) {
-                if (textSB.length() > 0) {
-                    postTokens.add(new NorToken(textSB.toString(), context, beginIndex, beginIndex + textSB.length(), NorToken.Attr.UNKNOW));
-                    textSB.setLength(0);
-                }
-                if (textSB.length() == 0) {
-                    beginIndex = preToken.getBeginIndex();
-                }
-                textSB.append(preToken.getText());
-            } else if (tag.equals("M") || tag.equals("B2") || tag.equals("B3")) {
-                if (textSB.length() == 0) {
-                    beginIndex = preToken.getBeginIndex();
-                }
-                textSB.append(preToken.getText());
-            } else if (tag.equals("E")) {
-                textSB.append(preToken.getText());
-                NorToken postToken = new NorToken(textSB.toString(), context, beginIndex, beginIndex + textSB.length(), NorToken.Attr.UNKNOW);
-                postTokens.add(postToken);
-                textSB.setLength(0);
-            } else if (tag.equals("S")) {
-                if (textSB.length() > 0) {
-                    postTokens.add(new NorToken(textSB.toString(), context, beginIndex, beginIndex + textSB.length(), NorToken.Attr.UNKNOW));
-                    textSB.setLength(0);
-                } else {
-                    beginIndex = preToken.getBeginIndex();
-                    postTokens.add(new NorToken(textSB.toString(), context, beginIndex, beginIndex + 1, NorToken.Attr.UNKNOW));
-                }
+    /**
+     * 把一个句子的标注结果转换成词的下标，写到spans[2 * spanSize]开始的位置
+     * @param spans 词的开始和结束下标
+     * @param spanSize 已经有的词数
+     * @param offset 句子的第一个字在文本里的下标
+     * @param tagIds 句子的标注结果
+     * @param size 句子的长度
+     * @return 新的词数
+     */
+    private int crfTag(int[] spans, int spanSize, int offset, int[] tagIds, int size) {
+        int beginIndex = -1;
+        int length = 0;
+        for (int index = 0; index < size; index++) {
+            switch (tagger.getRole(tagIds[index])) {
+                case Tagger.ROLE_BEGIN:
+                    if (length > 0) {
+                        spans[2 * spanSize] = beginIndex;
+                        spans[2 * spanSize + 1] = beginIndex + length;
+                        spanSize++;
+                        length = 0;
+                    }
+                    beginIndex = offset + index;
+                    length++;
+                    break;
+                case Tagger.ROLE_INSIDE:
+                    if (length == 0) {
+                        beginIndex = offset + index;
+                    }
+                    length++;
+                    break;
+                case Tagger.ROLE_END:
+                    length++;
+                    spans[2 * spanSize] = beginIndex;
+                    spans[2 * spanSize + 1] = beginIndex + length;
+                    spanSize++;
+                    length = 0;
+                    break;
+                case Tagger.ROLE_SINGLE:
+                    if (length > 0) {
+                        spans[2 * spanSize] = beginIndex;
+                        spans[2 * spanSize + 1] = beginIndex + length;
+                        length = 0;
+                    } else {
+                        beginIndex = offset + index;
+                        spans[2 * spanSize] = beginIndex;
+                        spans[2 * spanSize + 1] = beginIndex + 1;
+                    }
+                    spanSize++;
+                    break;
+                default:
+                    break;
             }
         }
 
-        // 可能执行结束还有一个Token没有加进去
-        if (textSB.length() > 0) {
-            postTokens.add(new NorToken(textSB.toString(), context, beginIndex, beginIndex + textSB.length(), NorToken.Attr.UNKNOW));
-            textSB.setLength(0);
+        // 可能执行结束还有一个词没有加进去
+        if (length > 0) {
+            spans[2 * spanSize] = beginIndex;
+            spans[2 * spanSize + 1] = beginIndex + length;
+            spanSize++;
         }
 
-        return postTokens;
+        return spanSize;
     }
 
-    private List<NorToken> bambooCrfTag(String context, List<Token> preTokens, int offset, String[] tags) {
-        List<NorToken> postTokens = new ArrayList<NorToken>();
-        StringBuilder textSB = new StringBuilder();
+    /**
+     * 和crfTag一样，只是B/M之后遇到B也不会断开，只在E和S的后面断开
+     */
+    private int bambooCrfTag(int[] spans, int spanSize, int offset, int[] tagIds, int size) {
         int beginIndex = -1;
-        for (int index = 0; index < tags.length; index++) {
-            String tag = tags[index];
-            NorToken preToken = (NorToken) preTokens.get(offset + index);
-            if (textSB.length() == 0) {
-                beginIndex = preToken.getBeginIndex();
+        int length = 0;
+        for (int index = 0; index < size; index++) {
+            if (length == 0) {
+                beginIndex = offset + index;
             }
-            textSB.append(preToken.getText());
-
-            if (tag.equals(END_TAG) || tag.equals(SINGLE_TAG)) {
-                NorToken postToken = new NorToken(textSB.toString(), context, beginIndex,
-                        beginIndex + textSB.length(), preToken.getAttr());
-                postTokens.add(postToken);
-                textSB.setLength(0);
+            length++;
+
+            switch (tagger.getRole(tagIds[index])) {
+                case Tagger.ROLE_END:
+                case Tagger.ROLE_SINGLE:
+                    spans[2 * spanSize] = beginIndex;
+                    spans[2 * spanSize + 1] = beginIndex + length;
+                    spanSize++;
+                    length = 0;
+                    break;
+                default:
+                    break;
             }
         }
 
-        // 可能执行结束还有一个Token没有加进去
-        if (textSB.length() > 0) {
-            postTokens.add(new NorToken(textSB.toString(), context, beginIndex,
-                    beginIndex + textSB.length(), NorToken.Attr.UNKNOW));
-            textSB.setLength(0);
+        // 可能执行结束还有一个词没有加进去
+        if (length > 0) {
+            spans[2 * spanSize] = beginIndex;
+            spans[2 * spanSize + 1] = beginIndex + length;
+            spanSize++;
         }
 
-        return postTokens;
+        return spanSize;
+    }
+
+    /**
+     * 存放标签下标的数组，按最长的句子分配
+     */
+    private int[] tagIdBuffer(int size) {
+        if (tagIds.length < size)
+            tagIds = new int[Math.max(size, tagIds.length * 2)];
+        return tagIds;
+    }
+
+    /**
+     * 存放词下标的数组，词数不会超过字数，所以按2 * 字数分配
+     */
+    private int[] spanBuffer(int length) {
+        if (spans.length < 2 * length)
+            spans = new int[Math.max(2 * length, spans.length * 2)];
+        return spans;
     }
 
     public List<Token> segment(String text) {
+        return segmentResult(text).toTokens();
+    }
+
+    /**
+     * 切分一段文本，结果里面只保存每个词的下标
+     * @param text 待切分的文本
+     * @return 切分结果，下标是相对于text的
+     */
+    public SegmentResult segmentResult(String text) {
         // 去掉首尾的空白
-        text = CharMatcher.WHITESPACE.trimFrom(text);
+        int trimStart = CharMatcher.WHITESPACE.negate().indexIn(text);
+        if (trimStart < 0) {
+            return new SegmentResult(text, new int[0], 0);
+        }
+        int trimEnd = CharMatcher.WHITESPACE.negate().lastIndexIn(text) + 1;
+        String context = text.substring(trimStart, trimEnd);
+
+        int[] spans = spanBuffer(context.length());
+        int spanSize;
+        if (model.dictionarySegmenter != null)
+            spanSize = model.dictionarySegmenter.segment(context, spans);
+        else
+            spanSize = crfSegment(context, spans);
 
-        if (text == null || text.length() == 0) {
-            return Collections.emptyList();
+        int[] offsets = new int[2 * spanSize];
+        // 是否使用后处理
+        if (usePostprocess) {
+            spanSize = model.combinePostProcessor.process(context, spans, spanSize, offsets);
+            spanSize = model.spanMerger.process(context, offsets, spanSize);
+        } else {
+            System.arraycopy(spans, 0, offsets, 0, 2 * spanSize);
         }
+        // 最后按用户词典合并，用户词典优先
+        if (model.userWordMerger != null)
+            spanSize = model.userWordMerger.process(context, offsets, spanSize);
+
+        // 下标从相对于去掉空白的文本换成相对于原始文本
+        if (trimStart > 0) {
+            for (int k = 0; k < 2 * spanSize; k++) {
+                offsets[k] += trimStart;
+            }
+        }
+        return new SegmentResult(text, offsets, spanSize);
+    }
 
-        List<Token> preTokens = preprocessor.process(text);
-        List<Token> tokens = new ArrayList<Token>();
+    /**
+     * 用CRF切分，按空白和，。；？！断句，每句标注一次
+     * @param context 去掉首尾空白的文本
+     * @param spans 词的开始和结束下标
+     * @return 词数
+     */
+    private int crfSegment(String context, int[] spans) {
+        int spanSize = 0;
 
-        List<NorToken> senten = new ArrayList<NorToken>();
-        List<ArrayList<String>> sentenFeature = new ArrayList<ArrayList<String>>();
+        // 句子里面每个字正规化以后的结果
+        StringBuilder senten = new StringBuilder();
+        FeatureMatrix sentenFeature = this.sentenFeature;
+        sentenFeature.clear();
 
         int offset = 0;
         int i = 0;
-        for (; i < preTokens.size(); ++i) {
-            NorToken token = (NorToken) preTokens.get(i);
-            boolean append = token.getAttr() != NorToken.Attr.WHITESPACE;
+        for (; i < context.length(); ++i) {
+            // 半角转全角，同时得到字符类型
+            int entry = CharTable.lookup(context.charAt(i));
+            char dch = CharTable.normalized(entry);
+            NorToken.Attr attr = CharTable.attr(entry);
+            boolean append = attr != NorToken.Attr.WHITESPACE;
             if (append) {
-                senten.add(token);
-                // 求这个Token的特征
-                ArrayList<String> tokenFeature = new ArrayList<String>();
-                tokenFeature.add(token.getNorText());
-                if (useCharType)
-                    tokenFeature.add(BaselinePreprocessor.getTypeStr(token.getAttr()));
-                if (wordToVectorFeature != null)
-                    tokenFeature.add(wordToVectorFeature.
-                            queryWordToVecType(token.getNorText()));
-                if (entropyFeature != null) {
-                    tokenFeature.add(String.valueOf(entropyFeature.
-                            getForwardEntropy(token.getNorText().charAt(0))));
-                    tokenFeature.add(String.valueOf(entropyFeature.
-                            getBackwardEntropy(token.getNorText().charAt(0))));
-                }
-                sentenFeature.add(tokenFeature);
+                senten.append(dch);
+                // 求这个字的特征
+                featureExtractor.addChar(sentenFeature, dch);
             }
-            char firstChar = token.getText().charAt(0);
             // 段句的时候根据空白还有，。；？！
-            if (token.getAttr() == NorToken.Attr.WHITESPACE
-                    || firstChar == '，' || firstChar == '！' || firstChar == '？'
-                    || firstChar == '；' || firstChar == '。') {
-                List<String[]> features = getSentenLevelFeature(sentenFeature, senten);
-                String[] tags = tagger.tag(features);
+            if (!append || dch == '，' || dch == '！' || dch == '？' || dch == '；' || dch == '。') {
+                featureExtractor.addSentenceFeatures(sentenFeature, senten);
+                int[] tagIds = tagIdBuffer(sentenFeature.size());
+                int size = tagger.tag(sentenFeature, tagIds);
                 if (debug)
-                    printFeaturesTags(features, tags);
-                offset = i - features.size() + (append ? 1 : 0);
-                tokens.addAll(bambooCrfTag(text, preTokens, offset, tags));
+                    printFeaturesTags(sentenFeature, tagIds);
+                offset = i - size + (append ? 1 : 0);
+                spanSize = bambooCrfTag(spans, spanSize, offset, tagIds, size);
                 // 清空数据
-                senten.clear();
+                senten.setLength(0);
                 sentenFeature.clear();
             }
         }
-        if (!senten.isEmpty()) {
-            List<String[]> features = getSentenLevelFeature(sentenFeature, senten);
-            String[] tags = tagger.tag(features);
+        if (senten.length() > 0) {
+            featureExtractor.addSentenceFeatures(sentenFeature, senten);
+            int[] tagIds = tagIdBuffer(sentenFeature.size());
+            int size = tagger.tag(sentenFeature, tagIds);
             if (debug)
-                printFeaturesTags(features, tags);
-            offset = i - features.size();
-            tokens.addAll(bambooCrfTag(text, preTokens, offset, tags));
+                printFeaturesTags(sentenFeature, tagIds);
+            offset = i - size;
+            spanSize = bambooCrfTag(spans, spanSize, offset, tagIds, size);
+            sentenFeature.clear();
         }
+        return spanSize;
+    }
 
-        // 是否使用后处理
-        if (usePostprocess) {
-            List<Token> out = new ArrayList<Token>(tokens.size());
-            combinePostProcessor.process(tokens, out);
-            processUrl.process(text, out);
-            processEnglish.process(text, out);
-            processDigit.process(text, out);
-            return out;
-        } else {
-            return tokens;
-        }
+    /**
+     * 流式切分，边读边切，适合没有换行的超长输入
+     * @param reader 输入
+     * @return 按顺序读出Token的TokenReader
+     */
+    public TokenReader segment(Reader reader) {
+        return new TokenReader(this, reader);
     }
 
-    private void printFeaturesTags(List<String[]> features, String[] tags) {
-        Joiner joiner = Joiner.on("\t");
+    private void printFeaturesTags(FeatureMatrix features, int[] tagIds) {
+        StringBuilder sb = new StringBuilder();
         for (int i = 0; i < features.size(); i++) {
-            System.out.println(joiner.join(features.get(i)) + "\t" + tags[i]);
+            features.appendRow(sb, i);
+            sb.append('\t').append(tagger.getLabel(tagIds[i]));
+            System.out.println(sb);
+            sb.setLength(0);
         }
         System.out.println();
     }
 
     /**
-     * 计算句子级别的特征，有些特征要得到整个句子之后才可以计算
-     * <ul>
-     * <li>Lexical特征: L_{begin}(C_0)和L_{end}(C_0)</li>
-     * <li>AV特征</li>
-     * </ul>
-     * @param sentenFeature 存储句子里面每个Token的特征
-     * @param senten 整个句子包含的Token
-     * @return 句子中每个Token的特征
+     * 切分一行，返回输出文件里对应的一行（不包括换行符）
+     * 子类可以覆盖这个方法改变输出的格式
+     * @param line 输入的一行
+     * @return 输出的一行
      */
-    private ArrayList<String[]> getSentenLevelFeature(
-            List<ArrayList<String>> sentenFeature, List<NorToken> senten) {
-        // 是否需要添加词典特征
-        if (lexicalFeature != null) {
-            List<String[]> lexicalFeatures = lexicalFeature.getFeature(senten);
-            // lexical特征
-            for (int senIndex = 0; senIndex < senten.size(); senIndex++) {
-                String[] tempFeatures = lexicalFeatures.get(senIndex);
-                // 这个特征有两列
-                sentenFeature.get(senIndex).add(tempFeatures[0]);
-                sentenFeature.get(senIndex).add(tempFeatures[1]);
-            }
-        }
-
-        // 是否需要AV特征
-        if (accessorVariety != null) {
-            // ngram从[1~5]
-            for (int n = 1; n <= ProduceTrainData.MAXIUM_N_GRAM; n++) {
-                int[] ngramFeature = accessorVariety.sentenNgramFeature(n, senten);
-                for (int i = 0; i < ngramFeature.length; i++) {
-                    sentenFeature.get(i).add(String.valueOf(ngramFeature[i]));
-                }
-            }
+    protected String segmentLine(String line) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            segmentResult(line).appendTo(sb);
         }
-        // 是否需要Feng AV特征
-        if (fengAccessorVariety != null) {
-            // ngram从[1~5]
-            for (int n = 1; n <= ProduceTrainData.MAXIUM_N_GRAM; n++) {
-                int[] ngramFeature = fengAccessorVariety.sentenNgramFeature(n, senten);
-                for (int i = 0; i < ngramFeature.length; i++) {
-                    sentenFeature.get(i).add(String.valueOf(ngramFeature[i]));
-                }
-            }
+        catch (StringIndexOutOfBoundsException exp) {
+            System.out.println(line);
         }
+        return sb.toString();
+    }
 
-        // 把整个句子的特征转成CRF Tagger需要的格式
-        ArrayList<String[]> features = new ArrayList<String[]>();
-        for (int senIndex = 0; senIndex < senten.size(); senIndex++) {
-            List<String> tokenFeature = sentenFeature.get(senIndex);
-            features.add(tokenFeature.toArray(new String[tokenFeature.size()]));
-        }
-        return features;
+    /**
+     * 在同一个模型上创建一个新的分词器，并行切分的时候每个线程用一个
+     * 子类需要返回自己的类型，这样输出格式才一样
+     */
+    protected WordSegmenter newHandle() {
+        return new WordSegmenter(model);
     }
 
     /**
@@ -343,21 +350,25 @@ public class WordSegmenter {
         BufferedReader br = new BufferedReader(new FileReader(inFile));
         PrintWriter pw = new PrintWriter(outFile);
         while ((line = br.readLine()) != null) {
-            try {
-                List<Token> tokens = this.segment(line);
-                for (Token token : tokens) {
-                    pw.print(token.toString() + " ");
-                }
-            }
-            catch (StringIndexOutOfBoundsException exp) {
-                System.out.println(line);
-            }
+            pw.print(segmentLine(line));
             pw.println();
         }
         pw.close();
         br.close();
     }
 
+    /**
+     * 用线程池并行切分一个文件，输出的行顺序和输入一样
+     * @param inFile 输入的文件
+     * @param outFile 输出的文件
+     * @param executor 执行切分的线程池
+     * @param parallelism 线程池的线程数，用来控制同时提交的块数
+     */
+    public void segmentFile(File inFile, File outFile, ExecutorService executor, int parallelism)
+            throws IOException {
+        segmentFiles(Collections.singletonList(inFile), Collections.singletonList(outFile), executor, parallelism);
+    }
+
     /**
      * 对文件夹下的所有文件，挨个进行切分，结果输出到另一个文件夹，文件名字一样
      * @param inDirectory 待切分的目录
@@ -377,13 +388,159 @@ public class WordSegmenter {
         }
     }
 
+    /**
+     * 用threads个线程并行切分文件夹下的所有文件，threads <= 1的时候和单线程的版本一样
+     * @param inDirectory 待切分的目录
+     * @param outDirectory 存储结果的目录
+     * @param threads 线程数
+     */
+    public void segmentDirectory(File inDirectory, File outDirectory, int threads) throws IOException {
+        if (threads <= 1) {
+            segmentDirectory(inDirectory, outDirectory);
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            segmentDirectory(inDirectory, outDirectory, executor, threads);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 用线程池并行切分文件夹下的所有文件
+     * 文件按行分块提交给线程池，一个文件的块还没切完就可以开始读下一个文件，
+     * 结果按提交的顺序写回，所以每个输出文件里面行的顺序和输入一样
+     * @param inDirectory 待切分的目录
+     * @param outDirectory 存储结果的目录
+     * @param executor 执行切分的线程池
+     * @param parallelism 线程池的线程数，用来控制同时提交的块数
+     */
+    public void segmentDirectory(File inDirectory, File outDirectory, ExecutorService executor, int parallelism)
+            throws IOException {
+        // 如果输出目录不存在则创建
+        if (!outDirectory.exists())
+            outDirectory.mkdir();
+
+        List<File> inFiles = new ArrayList<File>(FileUtils.listFiles(inDirectory, null, false));
+        List<File> outFiles = new ArrayList<File>();
+        for (File inFile : inFiles) {
+            outFiles.add(new File(outDirectory, inFile.getName()));
+        }
+        segmentFiles(inFiles, outFiles, executor, parallelism);
+    }
+
+    /**
+     * 提交给线程池的一块，writer不为空并且lines为空的时候表示这个文件结束了
+     */
+    private static class Chunk {
+        final PrintWriter writer;
+        final Future<String[]> lines;
+
+        Chunk(PrintWriter writer, Future<String[]> lines) {
+            this.writer = writer;
+            this.lines = lines;
+        }
+    }
+
+    private void segmentFiles(List<File> inFiles, List<File> outFiles, ExecutorService executor, int parallelism)
+            throws IOException {
+        // 每个线程一个分词器，共享同一个模型
+        final ThreadLocal<WordSegmenter> handles = new ThreadLocal<WordSegmenter>() {
+            @Override
+            protected WordSegmenter initialValue() {
+                return newHandle();
+            }
+        };
+        // 已经提交还没有写出的块，最多maxPending个，防止把整个文件读进内存
+        int maxPending = Math.max(parallelism, 1) * 4;
+        LinkedList<Chunk> pending = new LinkedList<Chunk>();
+        List<PrintWriter> writers = new ArrayList<PrintWriter>();
+        try {
+            for (int f = 0; f < inFiles.size(); f++) {
+                System.out.println(inFiles.get(f).getName());
+                PrintWriter pw = new PrintWriter(outFiles.get(f));
+                writers.add(pw);
+                BufferedReader br = new BufferedReader(new FileReader(inFiles.get(f)));
+                try {
+                    String line;
+                    List<String> lines = new ArrayList<String>(CHUNK_LINES);
+                    while ((line = br.readLine()) != null) {
+                        lines.add(line);
+                        if (lines.size() == CHUNK_LINES) {
+                            pending.add(new Chunk(pw, submit(executor, handles, lines)));
+                            lines = new ArrayList<String>(CHUNK_LINES);
+                            while (pending.size() > maxPending)
+                                writeChunk(pending.removeFirst());
+                        }
+                    }
+                    if (!lines.isEmpty())
+                        pending.add(new Chunk(pw, submit(executor, handles, lines)));
+                    pending.add(new Chunk(pw, null));
+                } finally {
+                    br.close();
+                }
+            }
+            while (!pending.isEmpty())
+                writeChunk(pending.removeFirst());
+        } finally {
+            for (Chunk chunk : pending) {
+                if (chunk.lines != null)
+                    chunk.lines.cancel(true);
+            }
+            for (PrintWriter writer : writers) {
+                writer.close();
+            }
+        }
+    }
+
+    private static Future<String[]> submit(ExecutorService executor, final ThreadLocal<WordSegmenter> handles,
+                                           final List<String> lines) {
+        return executor.submit(new Callable<String[]>() {
+            @Override
+            public String[] call() {
+                WordSegmenter handle = handles.get();
+                String[] result = new String[lines.size()];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = handle.segmentLine(lines.get(i));
+                }
+                return result;
+            }
+        });
+    }
+
+    private static void writeChunk(Chunk chunk) throws IOException {
+        if (chunk.lines == null) {
+            chunk.writer.close();
+            return;
+        }
+        String[] lines;
+        try {
+            lines = chunk.lines.get();
+        } catch (InterruptedException exp) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while segmenting");
+        } catch (ExecutionException exp) {
+            Throwable cause = exp.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException(cause);
+        }
+        for (String line : lines) {
+            chunk.writer.print(line);
+            chunk.writer.println();
+        }
+    }
+
     public static void main(String[] args) throws IOException {
-        if (args.length != 3) {
-            System.err.println("Usage: ChineseSegmentor <config_file> <test_directory> <result_directory>");
+        if (args.length != 3 && args.length != 4) {
+            System.err.println("Usage: ChineseSegmentor <config_file> <test_directory> <result_directory> [threads]");
             System.exit(1);
         }
         WordSegmenter baseChineseSegmentor = new WordSegmenter(args[0]);
-        baseChineseSegmentor.segmentDirectory(new File(args[1]), new File(args[2]));
+        int threads = args.length == 4 ? Integer.parseInt(args[3]) : 1;
+        baseChineseSegmentor.segmentDirectory(new File(args[1]), new File(args[2]), threads);
     }
 }
-
@@ -0,0 +1,254 @@
+package com.nlp.segment.dict;
+
+import com.nlp.tree.DoubleArrayTrie;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 词典，词存在双数组Trie里面，值是词频，另外记录以每个字符开头和结尾的最长词的长度
+ * 词典文件每行第一列是词，第二列如果是整数就是词频，否则词频是0，
+ * webdict_with_freq.txt和一行一个词的合并词典都是这个格式
+ * 建好以后不再修改，可以被多个线程、多个分词器共享，
+ * 同一个文件用{@link DictionaryRegistry#get(String, String)}拿到的是同一个实例
+ * <p>词典可以事先用DictionaryCompiler编译成二进制镜像，加载的时候直接映射文件，
+ * 不用解析文本和建树，加载时间和词典大小无关，多个进程共享操作系统的page cache。
+ * 镜像的格式（大端）是</p>
+ * <pre>
+ * int    文件头 "DICT"
+ * int    版本号
+ * long   总词频（版本2开始有），加载的时候不用扫一遍所有的值
+ * 双数组Trie，见{@link DoubleArrayTrie#write(DataOutputStream)}
+ * byte[65536]  以每个字符开头的词的最大长度
+ * byte[65536]  以每个字符结尾的词的最大长度
+ * </pre>
+ */
+public final class Dictionary {
+    // 二进制镜像的文件头 "DICT"
+    public static final int IMAGE_MAGIC = 0x44494354;
+    public static final int IMAGE_VERSION = 2;
+
+    // 空词典
+    public static final Dictionary EMPTY = new Dictionary(new ArrayList<String>(), new int[0]);
+
+    // 词到词频
+    private final DoubleArrayTrie trie;
+    // 所有词的词频的和
+    private final long totalFrequency;
+    // 以某个字符为开头的词的最大长度，超过127的按127算
+    private final ByteBuffer prefixMaxLength;
+    // 以某个字符为结尾的词的最大长度
+    private final ByteBuffer suffixMaxLength;
+
+    /**
+     * @param words 词表，空串会被忽略
+     * @param frequencies 每个词的词频，不能是负数
+     */
+    public Dictionary(List<String> words, int[] frequencies) {
+        trie = DoubleArrayTrie.build(words, frequencies);
+        totalFrequency = trie.sumValues();
+        byte[] prefixMaxLength = new byte[Character.MAX_VALUE + 1];
+        byte[] suffixMaxLength = new byte[Character.MAX_VALUE + 1];
+        for (String word: words) {
+            if (word.isEmpty())
+                continue;
+            byte length = (byte) Math.min(word.length(), Byte.MAX_VALUE);
+            char prefixKey = word.charAt(0);
+            char suffixKey = word.charAt(word.length() - 1);
+            if (length > prefixMaxLength[prefixKey])
+                prefixMaxLength[prefixKey] = length;
+            if (length > suffixMaxLength[suffixKey])
+                suffixMaxLength[suffixKey] = length;
+        }
+        this.prefixMaxLength = ByteBuffer.wrap(prefixMaxLength);
+        this.suffixMaxLength = ByteBuffer.wrap(suffixMaxLength);
+    }
+
+    private Dictionary(DoubleArrayTrie trie, long totalFrequency, ByteBuffer prefixMaxLength,
+                       ByteBuffer suffixMaxLength) {
+        this.trie = trie;
+        this.totalFrequency = totalFrequency;
+        this.prefixMaxLength = prefixMaxLength;
+        this.suffixMaxLength = suffixMaxLength;
+    }
+
+    /**
+     * 读入词典文件，根据文件头自动判断是文本词典还是二进制镜像，
+     * 一般用{@link DictionaryRegistry#get(String, String)}，同一个文件只读一次
+     * @param filename 词典文件
+     * @param charset 文本词典的编码，二进制镜像忽略这个参数
+     */
+    public static Dictionary load(String filename, String charset) throws IOException {
+        File file = new File(filename);
+        if (isImage(file))
+            return map(file);
+        return loadText(filename, charset);
+    }
+
+    /**
+     * 读入文本词典
+     */
+    public static Dictionary loadText(String filename, String charset) throws IOException {
+        List<String> words = new ArrayList<String>();
+        List<Integer> frequencies = new ArrayList<Integer>();
+        DoubleArrayTrie.readText(filename, charset, words, frequencies);
+        return new Dictionary(words, toArray(frequencies));
+    }
+
+    static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * 判断文件是不是二进制镜像
+     */
+    public static boolean isImage(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            return file.length() >= 4 && in.readInt() == IMAGE_MAGIC;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 把文件映射到内存，只读，映射在文件关闭之后依然有效
+     * @param file 二进制镜像
+     */
+    public static Dictionary map(File file) throws IOException {
+        MappedByteBuffer buffer;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            randomAccessFile.close();
+        }
+        if (buffer.remaining() < 8 || buffer.getInt() != IMAGE_MAGIC)
+            throw new IllegalStateException("wrong format: " + file);
+        int version = buffer.getInt();
+        if (version != 1 && version != IMAGE_VERSION)
+            throw new IllegalStateException("unsupported dictionary image version: " + version);
+        long totalFrequency = -1;
+        if (version >= 2) {
+            if (buffer.remaining() < 8)
+                throw new IllegalStateException("unexpected end of dictionary image");
+            totalFrequency = buffer.getLong();
+        }
+        DoubleArrayTrie trie = DoubleArrayTrie.read(buffer);
+        // 版本1的镜像没有总词频，只能扫一遍
+        if (totalFrequency < 0)
+            totalFrequency = trie.sumValues();
+        ByteBuffer prefixMaxLength = slice(buffer, Character.MAX_VALUE + 1);
+        ByteBuffer suffixMaxLength = slice(buffer, Character.MAX_VALUE + 1);
+        if (buffer.hasRemaining())
+            throw new IllegalStateException("wrong dictionary image size: " + file);
+        return new Dictionary(trie, totalFrequency, prefixMaxLength, suffixMaxLength);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        if (length > buffer.remaining())
+            throw new IllegalStateException("unexpected end of dictionary image");
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+
+    /**
+     * 保存成二进制镜像
+     * @param file 输出文件
+     */
+    public void writeImage(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(IMAGE_MAGIC);
+            out.writeInt(IMAGE_VERSION);
+            out.writeLong(totalFrequency);
+            trie.write(out);
+            for (int ch = 0; ch <= Character.MAX_VALUE; ch++) {
+                out.writeByte(prefixMaxLength.get(ch));
+            }
+            for (int ch = 0; ch <= Character.MAX_VALUE; ch++) {
+                out.writeByte(suffixMaxLength.get(ch));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return 词典的双数组Trie，值是词频，用来做前缀查询
+     */
+    public DoubleArrayTrie getTrie() {
+        return trie;
+    }
+
+    public boolean contains(CharSequence word) {
+        return trie.get(word) >= 0;
+    }
+
+    /**
+     * 查询text[begin, end)在不在词典里，不用先substring
+     */
+    public boolean contains(CharSequence text, int begin, int end) {
+        return trie.get(text, begin, end) >= 0;
+    }
+
+    /**
+     * @return 词频，不在词典里返回-1
+     */
+    public int getFrequency(CharSequence word) {
+        return trie.get(word);
+    }
+
+    /**
+     * @return 所有词的词频的和，建词典或者写镜像的时候算好，不用每次扫一遍
+     */
+    public long getTotalFrequency() {
+        return totalFrequency;
+    }
+
+    /**
+     * @return 以ch开头的最长词的长度，没有就是0
+     */
+    public int getPrefixMaxLength(char ch) {
+        return prefixMaxLength.get(ch);
+    }
+
+    /**
+     * @return 以ch结尾的最长词的长度，没有就是0
+     */
+    public int getSuffixMaxLength(char ch) {
+        return suffixMaxLength.get(ch);
+    }
+
+    /**
+     * @return 最长的词的长度
+     */
+    public int getMaxLength() {
+        return trie.getMaxLength();
+    }
+
+    /**
+     * @return 词的个数
+     */
+    public int size() {
+        return trie.size();
+    }
+}
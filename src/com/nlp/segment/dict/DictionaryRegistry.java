@@ -0,0 +1,119 @@
+package com.nlp.segment.dict;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 整个JVM共享的词典表，按（文件路径，编码，修改时间）缓存加载好的{@link Dictionary}
+ * LexicalFeature、WebdictFeature和CombinePostProcessor用的经常是同一个webdict，
+ * 原来每个都要自己读一遍文件建一份HashSet，现在同一个文件只读一次，所有分词器拿到同一个实例。
+ * 文件被修改以后（修改时间变了）再取会重新加载，旧的实例不再缓存，已经拿到的还可以继续用
+ */
+public final class DictionaryRegistry {
+    // 正在加载或者已经加载好的词典，同一个key只加载一次，其他线程等同一个FutureTask
+    private static final ConcurrentMap<Key, FutureTask<Dictionary>> dictionaries =
+            new ConcurrentHashMap<Key, FutureTask<Dictionary>>();
+
+    private DictionaryRegistry() {
+    }
+
+    /**
+     * 取词典，没有加载过或者文件改过就加载
+     * 加载在第一个请求这个文件的线程里进行，不持有全局的锁，不同的文件可以同时加载，
+     * 同一个文件的其他请求等它加载完，加载失败的不缓存，下次再取会重新加载
+     * @param filename 词典文件
+     * @param charset 文件编码
+     * @return 共享的词典
+     */
+    public static Dictionary get(String filename, final String charset) throws IOException {
+        final File file = new File(filename).getCanonicalFile();
+        // UTF-8和utf-8算同一个编码
+        Key key = new Key(file.getPath(), Charset.forName(charset).name(), file.lastModified());
+        FutureTask<Dictionary> task = dictionaries.get(key);
+        if (task == null) {
+            FutureTask<Dictionary> newTask = new FutureTask<Dictionary>(new Callable<Dictionary>() {
+                @Override
+                public Dictionary call() throws IOException {
+                    return Dictionary.load(file.getPath(), charset);
+                }
+            });
+            task = dictionaries.putIfAbsent(key, newTask);
+            if (task == null) {
+                task = newTask;
+                task.run();
+                removeOldVersions(key);
+            }
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            dictionaries.remove(key, task);
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while loading " + file);
+        }
+    }
+
+    /**
+     * 同一个文件旧版本的词典去掉
+     */
+    private static void removeOldVersions(Key key) {
+        for (Key oldKey: dictionaries.keySet()) {
+            if (oldKey.path.equals(key.path) && oldKey.charset.equals(key.charset)
+                    && oldKey.lastModified != key.lastModified)
+                dictionaries.remove(oldKey);
+        }
+    }
+
+    /**
+     * 清空缓存，已经拿到的词典不受影响
+     */
+    public static void clear() {
+        dictionaries.clear();
+    }
+
+    private static final class Key {
+        final String path;
+        final String charset;
+        final long lastModified;
+
+        Key(String path, String charset, long lastModified) {
+            this.path = path;
+            this.charset = charset;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return lastModified == other.lastModified && path.equals(other.path) && charset.equals(other.charset);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = path.hashCode();
+            h = 31 * h + charset.hashCode();
+            h = 31 * h + (int) (lastModified ^ (lastModified >>> 32));
+            return h;
+        }
+    }
+}
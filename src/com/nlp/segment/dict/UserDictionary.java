@@ -0,0 +1,212 @@
+package com.nlp.segment.dict;
+
+import com.nlp.tree.DoubleArrayTrie;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 用户词典，可以在运行的时候修改，不用重启重新加载CRF模型
+ * <p>词典本身是不可修改的{@link Dictionary}，修改的时候（文件变了或者调用{@link #addWord(String, int)}）
+ * 在后台线程建一个新的词典，建好以后原子地换掉旧的，分词的时候用{@link #get()}取一次，
+ * 整个切分过程用的都是同一个词典，不会被修改阻塞</p>
+ * <p>文件格式和webdict一样，每行 词 [词频]，文件不存在的时候当作空词典，
+ * 调用{@link #startWatching(long)}之后定时检查文件的修改时间，变了就重新加载</p>
+ * <p>所有的用户词典共用一个后台线程，不用的时候调用{@link #close()}停掉这个词典的任务</p>
+ */
+public final class UserDictionary implements Closeable {
+    // 重建词典和检查文件的后台线程，所有的用户词典共用，第一次用的时候才创建
+    private static ScheduledExecutorService executor;
+
+    private final File file;
+    private final String charset;
+    // 当前的词典，换的时候整个替换
+    private final AtomicReference<Dictionary> current = new AtomicReference<Dictionary>(Dictionary.EMPTY);
+    // 通过addWord加进来的词，重新加载文件的时候保留，修改都在addedWords上同步
+    private final Map<String, Integer> addedWords = new LinkedHashMap<String, Integer>();
+    // 已经提交但是还没开始的重建，连续加的词合并成一次重建，在addedWords上同步
+    private Future<Dictionary> pendingRebuild;
+    // 建词典在buildLock上同步，后建的一定包含先加的词
+    private final Object buildLock = new Object();
+    // 上次加载的文件的修改时间和长度，在buildLock上同步
+    private long loadedModified = -1;
+    private long loadedLength = -1;
+    // 定时检查文件的任务，在this上同步
+    private ScheduledFuture<?> watchTask;
+    // close以后不能再加词，在addedWords上同步
+    private boolean closed;
+
+    public UserDictionary(String filename, String charset) throws IOException {
+        this.file = new File(filename);
+        this.charset = charset;
+        reload();
+    }
+
+    public UserDictionary(String filename) throws IOException {
+        this(filename, "UTF-8");
+    }
+
+    /**
+     * @return 当前的词典，不会被修改，一次切分应该只取一次
+     */
+    public Dictionary get() {
+        return current.get();
+    }
+
+    /**
+     * 在当前线程重新读文件，建新的词典替换旧的，读失败的时候旧的词典不变
+     */
+    public void reload() throws IOException {
+        synchronized (buildLock) {
+            long modified = file.lastModified();
+            long length = file.length();
+            rebuild();
+            loadedModified = modified;
+            loadedLength = length;
+        }
+    }
+
+    /**
+     * 文件的修改时间或者长度变了才重新加载
+     * @return 是否重新加载了
+     */
+    public boolean reloadIfModified() throws IOException {
+        synchronized (buildLock) {
+            if (file.lastModified() == loadedModified && file.length() == loadedLength)
+                return false;
+            reload();
+            return true;
+        }
+    }
+
+    /**
+     * 加一个词，以后重新加载文件的时候也保留
+     * 只是把词记下来，新的词典在后台线程建，建好之前{@link #get()}还是旧的词典，
+     * 同时加的多个词只重建一次
+     * @param word 词
+     * @param frequency 词频，不能是负数
+     * @return 包含这个词的词典换上去以后完成，建词典失败的时候get()抛出ExecutionException
+     * @throws IllegalStateException 已经close了
+     */
+    public Future<Dictionary> addWord(String word, int frequency) {
+        if (frequency < 0)
+            throw new IllegalArgumentException("negative frequency " + frequency + " for " + word);
+        synchronized (addedWords) {
+            if (closed)
+                throw new IllegalStateException("user dictionary " + file + " is closed");
+            addedWords.put(word, frequency);
+            if (pendingRebuild == null) {
+                pendingRebuild = executor().submit(new Callable<Dictionary>() {
+                    @Override
+                    public Dictionary call() throws IOException {
+                        // 从这里开始加的词由下一次重建处理
+                        synchronized (addedWords) {
+                            pendingRebuild = null;
+                        }
+                        synchronized (buildLock) {
+                            rebuild();
+                        }
+                        return get();
+                    }
+                });
+            }
+            return pendingRebuild;
+        }
+    }
+
+    /**
+     * 从词典文件和加进来的词建新的词典，加进来的词优先，调用的时候要持有buildLock
+     */
+    private void rebuild() throws IOException {
+        List<String> words = new ArrayList<String>();
+        List<Integer> frequencies = new ArrayList<Integer>();
+        synchronized (addedWords) {
+            for (Map.Entry<String, Integer> entry: addedWords.entrySet()) {
+                words.add(entry.getKey());
+                frequencies.add(entry.getValue());
+            }
+        }
+        if (file.exists())
+            DoubleArrayTrie.readText(file.getPath(), charset, words, frequencies);
+        current.set(new Dictionary(words, Dictionary.toArray(frequencies)));
+    }
+
+    private static synchronized ScheduledExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "user-dictionary-builder");
+                    // 不影响JVM退出
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * 在后台线程每隔intervalMillis毫秒检查一次文件有没有修改
+     * @param intervalMillis 检查的间隔
+     */
+    public synchronized void startWatching(long intervalMillis) {
+        synchronized (addedWords) {
+            if (closed)
+                throw new IllegalStateException("user dictionary " + file + " is closed");
+        }
+        if (watchTask != null)
+            return;
+        watchTask = executor().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (reloadIfModified())
+                        System.err.println("reload user dictionary " + file + ": " + get().size() + " words");
+                } catch (IOException e) {
+                    // 文件可能正在写，下次再试
+                    e.printStackTrace();
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止检查文件
+     */
+    public synchronized void stopWatching() {
+        if (watchTask != null) {
+            watchTask.cancel(false);
+            watchTask = null;
+        }
+    }
+
+    /**
+     * 停止检查文件，取消还没开始的重建，之后不能再加词，{@link #get()}还是可以用
+     * 后台线程是共用的，不会被停掉，它是daemon线程，不影响JVM退出
+     */
+    @Override
+    public void close() {
+        synchronized (addedWords) {
+            closed = true;
+            if (pendingRebuild != null) {
+                pendingRebuild.cancel(false);
+                pendingRebuild = null;
+            }
+        }
+        stopWatching();
+    }
+}
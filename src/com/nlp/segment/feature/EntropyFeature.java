@@ -9,7 +9,7 @@ import org.apache.commons.io.FileUtils;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -29,10 +29,10 @@ public class EntropyFeature {
     private int currentID = 0;
     // 存储数据
     private int[][] data;
-    // 前向熵
-    private HashMap<Character, Double> forwardEntropy = new HashMap<Character, Double>();
-    // 后向熵
-    private HashMap<Character, Double> backwardEntropy = new HashMap<Character, Double>();
+    // 前向熵离散化以后的值，按字符下标，-1表示没有这个字符
+    private int[] forwardEntropy = newEntropyTable();
+    // 后向熵离散化以后的值
+    private int[] backwardEntropy = newEntropyTable();
 
     public EntropyFeature(String inputFile) throws IOException {
         File file = new File(inputFile);
@@ -104,7 +104,7 @@ public class EntropyFeature {
                     maxVal = entropy;
 
                 // 熵的公式最后有一个负号
-                forwardEntropy.put(key, entropy);
+                forwardEntropy[key] = discretizeEntropy(entropy);
             }
         }
         System.out.println("--------------forward entropy range---------------");
@@ -139,7 +139,7 @@ public class EntropyFeature {
                     maxVal = entropy;
 
                 // 熵的公式最后有一个负号
-                backwardEntropy.put(key, entropy);
+                backwardEntropy[key] = discretizeEntropy(entropy);
             }
         }
 
@@ -205,14 +205,30 @@ public class EntropyFeature {
     }
 
 
+    private static int[] newEntropyTable() {
+        int[] table = new int[Character.MAX_VALUE + 1];
+        Arrays.fill(table, -1);
+        return table;
+    }
+
+    /**
+     * 语料里面是否有这个字符，没有的话前后向熵特征都是0
+     * @param character 待查询字符
+     * @return
+     */
+    public boolean contains(char character) {
+        return forwardEntropy[character] >= 0;
+    }
+
+
     /**
      * 查询字符的前向熵特征
      * @param character 待查询字符
      * @return
      */
-    public int getForwardEntropy(Character character) {
-        if (forwardEntropy.containsKey(character)) {
-            return discretizeEntropy(forwardEntropy.get(character));
+    public int getForwardEntropy(char character) {
+        if (forwardEntropy[character] >= 0) {
+            return forwardEntropy[character];
         }
         else {
             System.err.println("No such key " + character);
@@ -226,9 +242,9 @@ public class EntropyFeature {
      * @param character 待查询字符
      * @return
      */
-    public int getBackwardEntropy(Character character) {
-        if (backwardEntropy.containsKey(character)) {
-            return discretizeEntropy(backwardEntropy.get(character));
+    public int getBackwardEntropy(char character) {
+        if (backwardEntropy[character] >= 0) {
+            return backwardEntropy[character];
         }
         else {
             System.err.println("No such key " + character);
@@ -1,73 +1,39 @@
 package com.nlp.segment.feature;
 
+import com.nlp.segment.dict.Dictionary;
+import com.nlp.segment.dict.DictionaryRegistry;
 import com.nlp.segment.preprocess.BaselinePreprocessor;
 import com.nlp.segment.preprocess.Preprocessor;
 import com.nlp.segment.token.NorToken;
 import com.nlp.segment.token.Token;
+import com.nlp.tree.DoubleArrayTrie;
 
-import java.io.*;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * 计算L_{begin}(C_0)和L_{end}(C_0)
  */
 public class LexicalFeature {
-    // 所有的词
-    private HashSet<String> dictionary = new HashSet<String>();
-    // 以某个字符为开头的字符串的最大长度
-    private HashMap<Character, Integer> prefixMaxLength = new HashMap<Character, Integer>();
-    // 以某个字符为结尾的字符串的最大长度
-    private HashMap<Character, Integer> suffixMaxLength = new HashMap<Character, Integer>();
-
-    public LexicalFeature(String dictFile, String charSet) throws IOException {
-
-        BufferedReader br = null;
-        try {
-            br = new BufferedReader(new InputStreamReader(new FileInputStream(dictFile), charSet));
-            String line;
-            while ((line = br.readLine()) != null) {
-                line = line.trim();
-                if (!line.isEmpty()) {
-                    String[] items = line.split("\\s+");
-                    String word = items[0];
-                    // 加入字典
-                    dictionary.add(word);
-
-                    // 记录word的长度，key为word的第一个字符
-                    Integer currentWordLength = word.length();
-                    Character prefixKey = word.charAt(0);
-                    Character suffixKey = word.charAt(currentWordLength - 1);
-                    if (prefixMaxLength.containsKey(prefixKey)) {
-                        if (currentWordLength > prefixMaxLength.get(prefixKey))
-                            prefixMaxLength.put(prefixKey, currentWordLength);
-                    }
-                    else {
-                        prefixMaxLength.put(prefixKey, currentWordLength);
-                    }
-
-                    if (suffixMaxLength.containsKey(suffixKey)) {
-                        if (currentWordLength > suffixMaxLength.get(suffixKey))
-                            suffixMaxLength.put(suffixKey, currentWordLength);
-                    }
-                    else {
-                        suffixMaxLength.put(suffixKey, currentWordLength);
-                    }
-                }
-            }
-        }
-        finally {
-            if (br != null) {
-                try {
-                    br.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+    // 所有的词，用双数组Trie存，一次前缀查询就能找到从某个位置开始的所有词
+    // 同一个词典文件所有分词器共享一份
+    private final Dictionary dictionary;
+    // 前缀查询得到的词长度，每个线程一份，不用每句话分配
+    private final ThreadLocal<int[]> lengthBuffers = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[0];
         }
+    };
 
+    public LexicalFeature(Dictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    public LexicalFeature(String dictFile, String charSet) throws IOException {
+        this(DictionaryRegistry.get(dictFile, charSet));
     }
 
     public LexicalFeature(String dictFile) throws IOException {
@@ -80,15 +46,7 @@ public class LexicalFeature {
      * @return 最大词长
      */
     public int getCharPrefixMaxLength(Character character) {
-        if (!prefixMaxLength.containsKey(character))
-            return 0;
-        else {
-            int value = prefixMaxLength.get(character);
-            if (value >= 6)
-                return 6;
-            else
-                return value;
-        }
+        return Math.min(dictionary.getPrefixMaxLength(character), 6);
     }
 
     /**
@@ -97,73 +55,110 @@ public class LexicalFeature {
      * @return 最大词长
      */
     public int getCharSuffixMaxLength(Character character) {
-        if (!suffixMaxLength.containsKey(character))
-            return 0;
-        else {
-            int value = suffixMaxLength.get(character);
-            if (value >= 6)
-                return 6;
-            else
-                return value;
-        }
+        return Math.min(dictionary.getSuffixMaxLength(character), 6);
     }
 
+    /**
+     * 计算每个Token的Lexical特征，每个Token一行，和原来的实现一样
+     * 词要在Token的边界上开始和结束，并且至少跨两个Token，特征值是词的字数
+     * @param sentence 正规化以后的Token
+     * @return 每个Token的两列特征
+     */
     public List<String[]> getFeature(List<NorToken> sentence) {
-        ArrayList<int[]> features = new ArrayList<int[]>();
-        for (int i = 0; i < sentence.size(); i++) {
-            int[] tempArray = {0, 0};
-            features.add(tempArray);
+        int size = sentence.size();
+        // 所有token拼起来，bounds[k]是第k个token的开始位置
+        StringBuilder sb = new StringBuilder();
+        int[] bounds = new int[size + 1];
+        for (int k = 0; k < size; k++) {
+            bounds[k] = sb.length();
+            sb.append(sentence.get(k).getNorText());
         }
+        bounds[size] = sb.length();
 
-        for (int i = 0; i < sentence.size(); i++) {
-            NorToken token = sentence.get(i);
-            // 得到当前字符
-            Character prefixChar = token.getNorText().charAt(0);
-            Integer maxLength = prefixMaxLength.get(prefixChar);
-            if (maxLength == null || maxLength < 2) {
-                // 字典里面没有以prifixChar开头的词
-                continue;
-            }
+        int[] begins = new int[size];
+        int[] ends = new int[size];
+        label(sb, bounds, size, begins, ends);
+        return toStrings(begins, ends, size);
+    }
 
-            int maxEndIndex = Math.min(sentence.size(), i + maxLength);
-            for (int endIndex = maxEndIndex; endIndex >= i + 2; endIndex--) {
-                StringBuilder subStrBuilder = new StringBuilder();
-                int j = i;
-                for (; j < endIndex; j++) {
-                    // 提取从i到endIndex的字符串
-                    subStrBuilder.append(sentence.get(j).getNorText());
-                }
-                String subStr = subStrBuilder.toString();
-                if (dictionary.contains(subStr)) {
-                    // 修改特征值
-                    for (j = i; j < endIndex; j++) {
-                        // 词的开头字符
-                        if (j == i) {
-                            // 以当前字符开头的词最大长度
-                            if (subStr.length() > features.get(j)[0])
-                                features.get(j)[0] = subStr.length();
-                        }
-                        if (j == endIndex - 1) {
-                            // 以某个字符为结尾的词的最大长度
-                            if (subStr.length() > features.get(j)[1])
-                                features.get(j)[1] = subStr.length();
-                        }
-                    }
-                }
-            }
-        }
+    /**
+     * 计算句子里面每个字的Lexical特征
+     * @param sentence 正规化以后的句子，每个字一行
+     * @return 每个字的两列特征
+     */
+    public List<String[]> getFeature(CharSequence sentence) {
+        int[] begins = new int[sentence.length()];
+        int[] ends = new int[sentence.length()];
+        getFeature(sentence, begins, ends);
+        return toStrings(begins, ends, sentence.length());
+    }
 
+    private static List<String[]> toStrings(int[] begins, int[] ends, int size) {
         ArrayList<String[]> strFeatures = new ArrayList<String[]>();
-        for (int[] f: features) {
-            String[] newFea = new String[f.length];
-            for (int i = 0; i < f.length; i++) {
-                newFea[i] = String.valueOf(f[i]);
-            }
-            strFeatures.add(newFea);
+        for (int i = 0; i < size; i++) {
+            strFeatures.add(new String[] {String.valueOf(begins[i]), String.valueOf(ends[i])});
         }
         return strFeatures;
     }
 
+    /**
+     * 计算句子里面每个字的Lexical特征，直接写到两个int数组里面
+     * @param sentence 正规化以后的句子
+     * @param begins 输出以每个字开头的最长词的长度，没有就是0
+     * @param ends 输出以每个字结尾的最长词的长度，没有就是0
+     */
+    public void getFeature(CharSequence sentence, int[] begins, int[] ends) {
+        label(sentence, null, sentence.length(), begins, ends);
+    }
+
+    /**
+     * 计算每个位置的特征
+     * @param text 文本
+     * @param bounds 每个位置在text里的开始位置，多一个结束位置，null表示每个字是一个位置
+     * @param size 位置的个数
+     */
+    private void label(CharSequence text, int[] bounds, int size, int[] begins, int[] ends) {
+        for (int i = 0; i < size; i++) {
+            begins[i] = 0;
+            ends[i] = 0;
+        }
+
+        // 从每个位置在Trie上走一遍，得到以当前位置开头的所有词的长度（从短到长）
+        DoubleArrayTrie trie = dictionary.getTrie();
+        int[] lengths = lengthBuffer(Math.max(trie.getMaxLength(), 1));
+        int textLength = bounds == null ? size : bounds[size];
+        for (int i = 0; i < size; i++) {
+            int begin = bounds == null ? i : bounds[i];
+            int count = trie.commonPrefixSearch(text, begin, textLength, lengths, null);
+            for (int k = 0; k < count; k++) {
+                int wordLength = lengths[k];
+                // 词的结束位置，一个位置有好几个字的时候词的结尾要落在位置的边界上，否则是负数
+                int end = bounds == null ? i + wordLength
+                        : Arrays.binarySearch(bounds, i + 1, size + 1, begin + wordLength);
+                // 只算两个位置以上的词
+                if (end < i + 2)
+                    continue;
+                // 以当前字符开头的词最大长度，最后一个就是最长的
+                begins[i] = wordLength;
+                // 以某个字符为结尾的词的最大长度
+                if (wordLength > ends[end - 1])
+                    ends[end - 1] = wordLength;
+            }
+        }
+    }
+
+    /**
+     * 存放词长度的临时空间，每个线程一份，不够长的时候重新分配
+     */
+    private int[] lengthBuffer(int maxLength) {
+        int[] lengths = lengthBuffers.get();
+        if (lengths.length < maxLength) {
+            lengths = new int[maxLength];
+            lengthBuffers.set(lengths);
+        }
+        return lengths;
+    }
+
     public void test() {
         Preprocessor preprocessor = new BaselinePreprocessor();
         List<Token> tokens = preprocessor.process("中共中央总书记");
@@ -1,150 +1,195 @@
 package com.nlp.segment.feature;
 
+import com.nlp.segment.dict.Dictionary;
+import com.nlp.segment.dict.DictionaryRegistry;
 import com.nlp.segment.preprocess.BaselinePreprocessor;
+import com.nlp.segment.preprocess.CharTable;
 import com.nlp.segment.preprocess.Preprocessor;
 import com.nlp.segment.token.NorToken;
 import com.nlp.segment.token.Token;
 
-import java.io.*;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * 提取webdict的词特征，label包括O, B, Y, E, B+Y, E+Y
+ * <p>每个字两列特征，第一列是作为词结尾和中间的标记，第二列是作为词开头和中间的标记，
+ * 标记是{@link #getLabels()}里的下标，{@link #plusFeature(String, String)}的合并规则事先算成一张表</p>
+ * 词典用双数组Trie存，每个位置在Trie上走一遍就能得到最长的词
  */
 public class WebdictFeature {
+    // 非中文和数字
+    public static final byte O = 0;
+    // 中文和数字，不在任何词里面
+    public static final byte N = 1;
+    public static final byte B = 2;
+    public static final byte E = 3;
+    public static final byte Y = 4;
+    // Y+B
+    public static final byte T = 5;
+    // Y+E
+    public static final byte U = 6;
+    private static final String[] LABELS = {"O", "N", "B", "E", "Y", "T", "U"};
+    // PLUS[ori][cur]等于plusFeature(ori, cur)
+    private static final byte[][] PLUS = new byte[LABELS.length][LABELS.length];
+
+    static {
+        for (int ori = 0; ori < LABELS.length; ori++) {
+            for (int cur = 0; cur < LABELS.length; cur++) {
+                String label = plus(LABELS[ori], LABELS[cur]);
+                for (int k = 0; k < LABELS.length; k++) {
+                    if (LABELS[k].equals(label))
+                        PLUS[ori][cur] = (byte) k;
+                }
+            }
+        }
+    }
 
     // 字典树
-//    private TrieTree dictionary = new TrieTree();
-    // 存储webdict的字典信息，感觉用TrieTree树很慢，估计是我的程序原因
-    private HashSet<String> dictionary = new HashSet<String>();
+    // 原来用TrieTree很慢，后来换成HashSet，现在用双数组Trie，同一个词典文件所有分词器共享一份
+    private final Dictionary dictionary;
 
-    // 以某个字符为开头的字符串的最大长度
-    private HashMap<Character, Integer> prefixMaxLength = new HashMap<Character, Integer>();
+    public WebdictFeature(Dictionary dictionary) {
+        this.dictionary = dictionary;
+    }
 
     public WebdictFeature(String dictFile, String charSet) {
+        this(loadDictionary(dictFile, charSet));
+    }
 
-        BufferedReader br = null;
+    /**
+     * 读不到词典文件的时候和原来一样只打印异常，用空词典
+     */
+    private static Dictionary loadDictionary(String dictFile, String charSet) {
         try {
-            br = new BufferedReader(new InputStreamReader(new FileInputStream(dictFile), charSet));
-            String line;
-            while ((line = br.readLine()) != null) {
-                line = line.trim();
-                if (!line.isEmpty()) {
-                    String[] items = line.split("\\s+");
-                    String word = items[0];
-                    // 加入字典
-                    dictionary.add(word);
-
-                    // 记录word的长度，key为word的第一个字符
-                    Integer currentWordLength = word.length();
-                    Character key = word.charAt(0);
-                    if (prefixMaxLength.containsKey(key)) {
-                        if (currentWordLength > prefixMaxLength.get(key))
-                            prefixMaxLength.put(key, currentWordLength);
-                    }
-                    else {
-                        prefixMaxLength.put(key, currentWordLength);
-                    }
-                }
-            }
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (UnsupportedEncodingException e) {
-            e.printStackTrace();
+            return DictionaryRegistry.get(dictFile, charSet);
         } catch (IOException e) {
             e.printStackTrace();
-        } finally {
-            if (br != null) {
-                try {
-                    br.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+            return Dictionary.EMPTY;
         }
-
     }
 
     public WebdictFeature(String dictFile) {
         this(dictFile, "UTF-8");
     }
 
+    /**
+     * @return 所有标记的名字，下标就是特征的取值
+     */
+    public static String[] getLabels() {
+        return LABELS.clone();
+    }
+
     public List<String[]> getFeature(List<NorToken> sentence) {
+        int size = sentence.size();
+        // 所有token拼起来，bounds[k]是第k个token的开始位置
+        StringBuilder sb = new StringBuilder();
+        int[] bounds = new int[size + 1];
+        NorToken.Attr[] attrs = new NorToken.Attr[size];
+        for (int k = 0; k < size; k++) {
+            NorToken token = sentence.get(k);
+            bounds[k] = sb.length();
+            attrs[k] = token.getAttr();
+            sb.append(token.getNorText());
+        }
+        bounds[size] = sb.length();
+
+        int[] ends = new int[size];
+        int[] begins = new int[size];
+        label(sb, bounds, attrs, size, ends, begins);
+
         ArrayList<String[]> features = new ArrayList<String[]>();
-        for (NorToken token: sentence) {
+        for (int k = 0; k < size; k++) {
+            features.add(new String[] {LABELS[ends[k]], LABELS[begins[k]]});
+        }
+        return features;
+    }
 
-            if ((token.getAttr() != NorToken.Attr.CHWORD) &&
-                    (token.getAttr() != NorToken.Attr.NUMBER)) {
-                String[] tempArray = {"O", "O"};
-                features.add(tempArray);
+    /**
+     * 计算句子里面每个字的webdict特征，直接写到两个int数组里面，不分配内存
+     * @param sentence 正规化以后的句子，每个字是一个位置，字符类型用{@link CharTable}查
+     * @param ends 输出第一列，作为词结尾和中间的标记
+     * @param begins 输出第二列，作为词开头和中间的标记
+     */
+    public void getFeature(CharSequence sentence, int[] ends, int[] begins) {
+        label(sentence, null, null, sentence.length(), ends, begins);
+    }
+
+    /**
+     * 给每个位置打标记，从每个中文字开始找最长的词，词里面只能有中文和数字（例如 第十五次）
+     * @param text 文本
+     * @param bounds 每个位置在text里的开始位置，多一个结束位置，null表示每个字是一个位置
+     * @param attrs 每个位置的类型，null表示用{@link CharTable}查
+     * @param size 位置的个数
+     */
+    private void label(CharSequence text, int[] bounds, NorToken.Attr[] attrs, int size,
+                       int[] ends, int[] begins) {
+        for (int k = 0; k < size; k++) {
+            NorToken.Attr attr = attrs == null ? CharTable.attr(CharTable.lookup(text.charAt(k))) : attrs[k];
+            if (attr == NorToken.Attr.CHWORD || attr == NorToken.Attr.NUMBER) {
+                ends[k] = N;
+                begins[k] = N;
             } else {
-                String[] tempArray = {"N", "N"};
-                features.add(tempArray);
+                ends[k] = O;
+                begins[k] = O;
             }
         }
 
-        for (int i = 0; i < sentence.size();) {
-            NorToken token = sentence.get(i);
-            if (token.getAttr() != NorToken.Attr.CHWORD) {
-                i++;
+        // 一个位置有好几个字的时候存放匹配到的词的长度，整句只分配一次
+        int[] lengths = bounds == null ? null : new int[Math.max(dictionary.getMaxLength(), 1)];
+        // 从当前位置开始连续的中文和数字到runEnd为止，标记合并之后不会变回O
+        int runEnd = 0;
+        for (int i = 0; i < size; i++) {
+            if (ends[i] == O)
                 continue;
-            }
-
-            // 当前字符是中文
-            Character prefixChar = token.getNorText().charAt(0);
-            Integer maxLength = prefixMaxLength.get(prefixChar);
-            // 当前字符开头的词没有或者长度是1
-            if (maxLength == null || maxLength < 2) {
-                i++;
+            NorToken.Attr attr = attrs == null ? CharTable.attr(CharTable.lookup(text.charAt(i))) : attrs[i];
+            if (attr != NorToken.Attr.CHWORD)
                 continue;
+            if (runEnd <= i) {
+                runEnd = i + 1;
+                while (runEnd < size && ends[runEnd] != O)
+                    runEnd++;
             }
 
-            // 有当前字符开头的词，并且长度是>=2
-            boolean isMatch = false;
-            int maxEndIndex = Math.min(sentence.size(), i + maxLength);
-            for (int endIndex = maxEndIndex; endIndex >= i + 2; endIndex--) {
-                StringBuilder subStrBuilder = new StringBuilder();
-                int j = i;
-                boolean otherCharInChineseSeq = false;
-                for (; j < endIndex && !otherCharInChineseSeq; j++) {
-                    // 我们允许数字和中文组成词
-                    // 例如 第十五次
-                    if ((sentence.get(j).getAttr() != NorToken.Attr.CHWORD) &&
-                            sentence.get(j).getAttr() != NorToken.Attr.NUMBER)
-                        otherCharInChineseSeq = true;
-                    subStrBuilder.append(sentence.get(j).getNorText());
-                }
-                if (otherCharInChineseSeq)
-                    continue;
-                String subStr = subStrBuilder.toString();
-                if (dictionary.contains(subStr)) {
-                    // 修改特征值
-                    for (j = i; j < endIndex; j++) {
-                        // 词的开头字符
-                        if (j == i) {
-                            features.get(j)[1] = plusFeature(features.get(j)[1], "B");
-                        }
-                        else if (j == endIndex - 1) {
-                            features.get(j)[0] = plusFeature(features.get(j)[0], "E");
-                        }
-                        else {
-                            features.get(j)[0] = plusFeature(features.get(j)[0], "Y");
-                            features.get(j)[1] = plusFeature(features.get(j)[1], "Y");
-                        }
-                    }
-                    break;
-                }
+            int endIndex = longestMatch(text, bounds, lengths, i, runEnd);
+            if (endIndex < i + 2)
+                continue;
+            // 修改特征值，词的开头字符和结尾字符
+            begins[i] = PLUS[begins[i]][B];
+            ends[endIndex - 1] = PLUS[ends[endIndex - 1]][E];
+            for (int j = i + 1; j < endIndex - 1; j++) {
+                ends[j] = PLUS[ends[j]][Y];
+                begins[j] = PLUS[begins[j]][Y];
             }
-            i++;
         }
-        return features;
     }
 
+    /**
+     * 从位置i开始，不超过runEnd的最长的词
+     * @param lengths 存放词长度的临时空间，bounds是null的时候不用
+     * @return 词的结束位置，没有词就是i
+     */
+    private int longestMatch(CharSequence text, int[] bounds, int[] lengths, int i, int runEnd) {
+        if (bounds == null)
+            return i + dictionary.getTrie().longestMatch(text, i, runEnd);
+
+        // 一个位置可能有好几个字，词的结尾要落在位置的边界上
+        int count = dictionary.getTrie().commonPrefixSearch(text, bounds[i], bounds[runEnd], lengths, null);
+        for (int k = count - 1; k >= 0; k--) {
+            int end = Arrays.binarySearch(bounds, i + 1, runEnd + 1, bounds[i] + lengths[k]);
+            if (end >= 0)
+                return end;
+        }
+        return i;
+    }
 
     public String plusFeature(String oriFeature, String curFeature) {
+        return plus(oriFeature, curFeature);
+    }
+
+    private static String plus(String oriFeature, String curFeature) {
         if (oriFeature.equals("N"))
             return curFeature;
 
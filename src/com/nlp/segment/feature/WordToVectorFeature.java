@@ -1,17 +1,28 @@
 package com.nlp.segment.feature;
 
+import gnu.trove.TIntIntHashMap;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.LineIterator;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 通过对每个字的word2vec向量聚类产生的特征
  */
 public class WordToVectorFeature {
+    // 找不到的字符的类别
+    public static final String UNKNOWN_TYPE = "N";
+
     private HashMap<String, Integer> featureMap;
+    // 所有的类别，最后一个是UNKNOWN_TYPE
+    private String[] types;
+    // 字符到类别下标的映射
+    private TIntIntHashMap charTypeIds = new TIntIntHashMap();
 
     public WordToVectorFeature(String inputFilename) throws IOException {
         LineIterator lineIterator = null;
@@ -23,6 +34,41 @@ public class WordToVectorFeature {
             featureMap.put(fields[0], new Integer(fields[1]));
         }
         lineIterator.close();
+
+        // 给每个类别一个下标，方便按列存放特征
+        HashMap<Integer, Integer> typeIds = new HashMap<Integer, Integer>();
+        List<String> typeList = new ArrayList<String>();
+        for (Map.Entry<String, Integer> entry : featureMap.entrySet()) {
+            Integer typeId = typeIds.get(entry.getValue());
+            if (typeId == null) {
+                typeId = typeList.size();
+                typeIds.put(entry.getValue(), typeId);
+                typeList.add(String.valueOf(entry.getValue()));
+            }
+            if (entry.getKey().length() == 1)
+                charTypeIds.put(entry.getKey().charAt(0), typeId);
+        }
+        typeList.add(UNKNOWN_TYPE);
+        types = typeList.toArray(new String[typeList.size()]);
+    }
+
+    /**
+     * @return 所有类别的名字，下标就是{@link #queryWordToVecTypeId(char)}的返回值
+     */
+    public String[] getTypes() {
+        return types.clone();
+    }
+
+    /**
+     * 查询一个字符的类别下标
+     * @param ch 输入的字符
+     * @return 类别在{@link #getTypes()}里的下标，找不到就是最后一个（“N”）
+     */
+    public int queryWordToVecTypeId(char ch) {
+        if (charTypeIds.containsKey(ch))
+            return charTypeIds.get(ch);
+        else
+            return types.length - 1;
     }
 
     /**
@@ -34,6 +80,6 @@ public class WordToVectorFeature {
         if (featureMap.containsKey(str))
             return String.valueOf(featureMap.get(str));
         else
-            return "N";
+            return UNKNOWN_TYPE;
     }
 }
@@ -1,13 +1,11 @@
 package com.nlp.segment.postprocess;
 
+import com.nlp.segment.dict.Dictionary;
+import com.nlp.segment.dict.DictionaryRegistry;
 import com.nlp.segment.token.NorToken;
 import com.nlp.segment.token.Token;
-import gnu.trove.TObjectIntHashMap;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.List;
 import java.util.Properties;
 
@@ -21,7 +19,9 @@ public class CombinePostProcessor {
 	private static final int MIDDLE = 1 << 1;
 	private static final int RIGHT 	= 1;
 	
-	private TObjectIntHashMap<String> combineLexicon;
+	// 合并词典，可以直接用句子里的一段查询，不用substring
+	// 和其他用到同一个词典文件的地方共享一份
+	private Dictionary combineLexicon;
 	private boolean backwardCombine;
 	private boolean forwardCombine;
 	private boolean neighborComine;
@@ -39,34 +39,12 @@ public class CombinePostProcessor {
         // 是否合并连续相同的单字
 		kokoCombine = Boolean.valueOf(properties.getProperty("koko_combine"));
 		if (combineLexiconFilename != null && combineLexiconFilename.trim().length() > 0) {
-			combineLexicon = loadLexicon(combineLexiconFilename, "UTF-8");
+			combineLexicon = DictionaryRegistry.get(combineLexiconFilename, "UTF-8");
 		} else {
-			combineLexicon = new TObjectIntHashMap<String>();
+			combineLexicon = Dictionary.EMPTY;
 		}
 	}
 
-	private TObjectIntHashMap<String> loadLexicon(String lexiconFilename,
-			String charset) throws IOException {
-		BufferedReader br = null;
-		TObjectIntHashMap<String> lexicon = new TObjectIntHashMap<String>();
-		try {
-			br = new BufferedReader(new InputStreamReader(new FileInputStream(
-					lexiconFilename), charset));
-			String line;
-			while ((line = br.readLine()) != null) {
-				line = line.trim();
-				if (line.length() > 0) {
-					lexicon.put(line, 1);
-				}
-			}
-		} finally {
-			if (br != null) {
-				br.close();
-			}
-		}
-		return lexicon;
-	}
-
 	public void process(List<Token> in, List<Token> out) {
 		for (int i = 0; i < in.size(); i++) {
 			NorToken token = (NorToken) in.get(i);
@@ -81,26 +59,23 @@ public class CombinePostProcessor {
 			if (token.getLength() <= 2) {
 				if (neighborComine && i > 0 && i + 1 < in.size()
 						&& in.get(i - 1) != null && in.get(i + 1) != null) {
-					String combinedText = context.substring(in.get(i - 1)
-							.getBeginIndex(), in.get(i + 1).getEndIndex());
-					if (combineLexicon.containsKey(combinedText)) {
+					if (combineLexicon.contains(context, in.get(i - 1)
+							.getBeginIndex(), in.get(i + 1).getEndIndex())) {
 						match = LEFT | MIDDLE | RIGHT;
 						combinedToken = new NorToken(context, in.get(i - 1)
 								.getBeginIndex(), in.get(i + 1).getEndIndex());
 					}
 				} else if (backwardCombine && i > 0 && in.get(i - 1) != null) {
-					String combinedText = context.substring(in.get(i - 1)
-							.getBeginIndex(), token.getEndIndex());
-					if (combineLexicon.containsKey(combinedText)) {
+					if (combineLexicon.contains(context, in.get(i - 1)
+							.getBeginIndex(), token.getEndIndex())) {
 						match = LEFT | MIDDLE;
 						combinedToken = new NorToken(context, in.get(i - 1)
 								.getBeginIndex(), token.getEndIndex());
 					}
 				} else if (forwardCombine && i + 1 < in.size()
 						&& in.get(i + 1) != null) {
-					String combinedText = context.substring(
-							token.getBeginIndex(), in.get(i + 1).getEndIndex());
-					if (combineLexicon.containsKey(combinedText)) {
+					if (combineLexicon.contains(context,
+							token.getBeginIndex(), in.get(i + 1).getEndIndex())) {
 						match = MIDDLE | RIGHT;
 						combinedToken = new NorToken(context,
 								token.getBeginIndex(), in.get(i + 1)
@@ -108,7 +83,7 @@ public class CombinePostProcessor {
 					}
 				} else if (kokoCombine && i > 0 && in.get(i - 1) != null
 						&& in.get(i - 1).getLength() == 1
-						&& token.toString().equals(in.get(i - 1).toString())) {
+						&& sameText(context, token, in.get(i - 1))) {
 					match = LEFT | MIDDLE;
 					combinedToken = new NorToken(context, in.get(i - 1)
 							.getBeginIndex(), token.getEndIndex());
@@ -132,4 +107,82 @@ public class CombinePostProcessor {
 			}
 		}
 	}
+
+	/**
+	 * 两个词的内容是否一样，直接在原始句子上比较
+	 */
+	private static boolean sameText(String context, Token a, Token b) {
+		int length = a.getEndIndex() - a.getBeginIndex();
+		return length == b.getEndIndex() - b.getBeginIndex()
+				&& context.regionMatches(a.getBeginIndex(), context, b.getBeginIndex(), length);
+	}
+
+	/**
+	 * 和{@link #process(List, List)}的规则一样，只是词用下标表示，
+	 * 第i个词是context[in[2 * i], in[2 * i + 1])
+	 * @param context 原始句子
+	 * @param in 输入的词，处理的过程中会被修改
+	 * @param size 输入的词数
+	 * @param out 输出的词，长度至少是2 * size
+	 * @return 输出的词数
+	 */
+	public int process(String context, int[] in, int size, int[] out) {
+		int outSize = 0;
+		for (int i = 0; i < size; i++) {
+			// 已经被合并掉的词开始下标是-1
+			int begin = in[2 * i];
+			if (begin < 0) {
+				continue;
+			}
+			int end = in[2 * i + 1];
+			int match = 0;
+			int combinedBegin = begin;
+			int combinedEnd = end;
+
+			if (end - begin <= 2) {
+				boolean hasPrev = i > 0 && in[2 * i - 2] >= 0;
+				boolean hasNext = i + 1 < size && in[2 * i + 2] >= 0;
+				if (neighborComine && hasPrev && hasNext) {
+					if (combineLexicon.contains(context, in[2 * i - 2], in[2 * i + 3])) {
+						match = LEFT | MIDDLE | RIGHT;
+						combinedBegin = in[2 * i - 2];
+						combinedEnd = in[2 * i + 3];
+					}
+				} else if (backwardCombine && hasPrev) {
+					if (combineLexicon.contains(context, in[2 * i - 2], end)) {
+						match = LEFT | MIDDLE;
+						combinedBegin = in[2 * i - 2];
+					}
+				} else if (forwardCombine && hasNext) {
+					if (combineLexicon.contains(context, begin, in[2 * i + 3])) {
+						match = MIDDLE | RIGHT;
+						combinedEnd = in[2 * i + 3];
+					}
+				} else if (kokoCombine && hasPrev && in[2 * i - 1] - in[2 * i - 2] == 1
+						&& end - begin == 1 && context.charAt(begin) == context.charAt(in[2 * i - 2])) {
+					match = LEFT | MIDDLE;
+					combinedBegin = in[2 * i - 2];
+				}
+			}
+
+			if ((match & LEFT) != 0) {
+				outSize--;
+				in[2 * i - 2] = -1;
+				in[2 * i - 1] = -1;
+			}
+			if ((match & MIDDLE) != 0) {
+				// 和List版本的in.set(i, null)一样，后面的词不能再和它合并
+				in[2 * i] = -1;
+				in[2 * i + 1] = -1;
+			}
+			if ((match & RIGHT) != 0) {
+				in[2 * i + 2] = -1;
+				in[2 * i + 3] = -1;
+			}
+			out[2 * outSize] = combinedBegin;
+			out[2 * outSize + 1] = combinedEnd;
+			outSize++;
+		}
+		return outSize;
+	}
 }
@@ -1,9 +1,5 @@
 package com.nlp.segment.postprocess;
 
-import com.nlp.segment.token.Token;
-
-import java.util.List;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -17,12 +13,7 @@ public class ProcessDigit extends ProcessUrl{
                     +"\\p{Nd}*[.．]?\\p{Nd}+");
 
     @Override
-    public List<Token> process(String originStr, List<Token> tokens) {
-        Matcher matcher = digitPattern.matcher(originStr);
-        while (matcher.find()) {
-            // 找到一个网址进行一次拼接
-            concatTokens(originStr, matcher.start(), matcher.end(), matcher.group(), tokens);
-        }
-        return tokens;
+    protected Pattern getPattern() {
+        return digitPattern;
     }
 }
@@ -1,8 +1,5 @@
 package com.nlp.segment.postprocess;
 
-import com.nlp.segment.token.Token;
-
-import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -17,13 +14,8 @@ public class ProcessEnglish extends ProcessUrl{
             "[A-Z_a-z.．Ａ-Ｚ＿ａ-ｚ]*[A-Z_a-zＡ-Ｚ＿ａ-ｚ]");
 
     @Override
-    public List<Token> process(String originStr, List<Token> tokens) {
-        Matcher matcher = englishPattern.matcher(originStr);
-        while (matcher.find()) {
-            // 找到一个网址进行一次拼接
-            concatTokens(originStr, matcher.start(), matcher.end(), matcher.group(), tokens);
-        }
-        return tokens;
+    protected Pattern getPattern() {
+        return englishPattern;
     }
 
     public static void main(String[] args) {
@@ -18,8 +18,15 @@ public class ProcessUrl implements AlignProcessor{
     Pattern urlPattern = Pattern.compile("(https?|ftp|file)://" +
             "[-a-zA-Z0-9+&@#/%?=~_|!:,.;]*[-a-zA-Z0-9+&@#/%=~_|]", Pattern.CASE_INSENSITIVE);
 
+    /**
+     * 需要拼接起来的字符串的正则表达式，子类覆盖这个方法
+     */
+    protected Pattern getPattern() {
+        return urlPattern;
+    }
+
     public List<Token> process(String originStr, List<Token> tokens) {
-        Matcher matcher = urlPattern.matcher(originStr);
+        Matcher matcher = getPattern().matcher(originStr);
         while (matcher.find()) {
             // 找到一个网址进行一次拼接
             concatTokens(originStr, matcher.start(), matcher.end(), matcher.group(), tokens);
@@ -0,0 +1,89 @@
+package com.nlp.segment.postprocess;
+
+import java.util.BitSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 把网址、英文、数字被切开的词合并起来，代替依次调用ProcessUrl，ProcessEnglish，ProcessDigit
+ * 词用下标表示，第i个词是originStr[offsets[2 * i], offsets[2 * i + 1])
+ * <p>用两个BitSet记录哪些位置是词的开头和结尾，一个匹配[start, end)只要start是词的开头，
+ * end是词的结尾，就把中间的开头和结尾清掉，不需要每次从头累加词的长度，
+ * 所有的匹配处理完之后从左到右重建一遍词的下标</p>
+ * <p>每个正则各扫一遍原始字符串，按网址、英文、数字的顺序处理，最后只重建一次下标，
+ * 没有空白的时候和原来三遍后处理的结果一样。没有合成一个正则一起扫，因为网址没对齐的时候
+ * 原来还会合并网址里面的英文和数字，一个正则扫过去就跳过了。
+ * 原来按累加的词长对齐，词里面有空白（比如合并过的"P. Poll"）的时候后面的位置会对不上，
+ * 会漏掉合并或者丢字、重复，这里直接用下标，没有这个问题</p>
+ * 加载之后不再修改，可以被多个线程共享
+ */
+public class SpanMerger {
+    private final Pattern[] patterns;
+
+    /**
+     * 网址、英文、数字，和原来的后处理顺序一样
+     */
+    public SpanMerger() {
+        this(new ProcessUrl().getPattern(), new ProcessEnglish().getPattern(), new ProcessDigit().getPattern());
+    }
+
+    /**
+     * @param patterns 需要合并成一个词的正则表达式，按顺序处理
+     */
+    public SpanMerger(Pattern... patterns) {
+        this.patterns = patterns.clone();
+    }
+
+    /**
+     * 合并词
+     * @param originStr 原始字符串
+     * @param offsets 词的下标，直接在上面修改
+     * @param size 词数
+     * @return 合并之后的词数
+     */
+    public int process(String originStr, int[] offsets, int size) {
+        if (size < 2)
+            return size;
+        // 词的开头和结尾
+        BitSet begins = new BitSet(originStr.length() + 1);
+        BitSet ends = new BitSet(originStr.length() + 1);
+        for (int i = 0; i < size; i++) {
+            begins.set(offsets[2 * i]);
+            ends.set(offsets[2 * i + 1]);
+        }
+
+        boolean merged = false;
+        for (Pattern pattern: patterns) {
+            Matcher matcher = pattern.matcher(originStr);
+            while (matcher.find()) {
+                int start = matcher.start();
+                int end = matcher.end();
+                // 两头都对齐才合并，中间的边界都去掉
+                if (start < end && begins.get(start) && ends.get(end)) {
+                    int next = begins.nextSetBit(start + 1);
+                    if (next >= 0 && next < end) {
+                        begins.clear(start + 1, end);
+                        ends.clear(start + 1, end);
+                        merged = true;
+                    }
+                }
+            }
+        }
+        if (!merged)
+            return size;
+
+        // 从左到右重建词的下标，开头被清掉的词接到前一个词上
+        int newSize = 0;
+        for (int i = 0; i < size; i++) {
+            int begin = offsets[2 * i];
+            int end = offsets[2 * i + 1];
+            if (begins.get(begin))
+                offsets[2 * newSize] = begin;
+            if (ends.get(end)) {
+                offsets[2 * newSize + 1] = end;
+                newSize++;
+            }
+        }
+        return newSize;
+    }
+}
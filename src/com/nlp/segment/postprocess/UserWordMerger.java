@@ -0,0 +1,81 @@
+package com.nlp.segment.postprocess;
+
+import com.nlp.segment.dict.Dictionary;
+import com.nlp.segment.dict.UserDictionary;
+import com.nlp.tree.DoubleArrayTrie;
+
+/**
+ * 按用户词典合并词，从每个词开始找用户词典里最长的词，
+ * 这个词的开头和结尾都和切分结果的词对齐就把中间的词合并成一个
+ * 词用下标表示，第i个词是originStr[offsets[2 * i], offsets[2 * i + 1])
+ * 每次调用只取一次用户词典，切分的过程中用户词典被替换也不影响这次的结果
+ * 可以被多个线程共享，查词典用的临时空间每个线程一份
+ */
+public class UserWordMerger {
+    private final UserDictionary userDictionary;
+    // 存放词典里匹配到的词的长度，按见过的最长的词分配
+    private final ThreadLocal<int[]> lengthBuffers = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[0];
+        }
+    };
+
+    public UserWordMerger(UserDictionary userDictionary) {
+        this.userDictionary = userDictionary;
+    }
+
+    /**
+     * 合并词
+     * @param originStr 原始字符串
+     * @param offsets 词的下标，直接在上面修改
+     * @param size 词数
+     * @return 合并之后的词数
+     */
+    public int process(String originStr, int[] offsets, int size) {
+        Dictionary dictionary = userDictionary.get();
+        if (size < 2 || dictionary.size() == 0)
+            return size;
+        DoubleArrayTrie trie = dictionary.getTrie();
+        int[] lengths = lengthBuffer(trie.getMaxLength());
+
+        int newSize = 0;
+        int i = 0;
+        while (i < size) {
+            int begin = offsets[2 * i];
+            // 合并到第last个词
+            int last = i;
+            int count = trie.commonPrefixSearch(originStr, begin,
+                    Math.min(originStr.length(), begin + trie.getMaxLength()), lengths, null);
+            // 从最长的词开始找结尾对齐的
+            for (int k = count - 1; k >= 0 && begin + lengths[k] > offsets[2 * i + 1]; k--) {
+                int end = begin + lengths[k];
+                int t = i + 1;
+                while (t < size && offsets[2 * t + 1] < end) {
+                    t++;
+                }
+                if (t < size && offsets[2 * t + 1] == end) {
+                    last = t;
+                    break;
+                }
+            }
+            offsets[2 * newSize] = begin;
+            offsets[2 * newSize + 1] = offsets[2 * last + 1];
+            newSize++;
+            i = last + 1;
+        }
+        return newSize;
+    }
+
+    /**
+     * 当前线程的临时空间，用户词典换了以后最长的词可能变长
+     */
+    private int[] lengthBuffer(int maxLength) {
+        int[] lengths = lengthBuffers.get();
+        if (lengths.length < maxLength) {
+            lengths = new int[maxLength];
+            lengthBuffers.set(lengths);
+        }
+        return lengths;
+    }
+}
@@ -0,0 +1,167 @@
+package com.nlp.segment.preprocess;
+
+import com.google.common.base.CharMatcher;
+import com.nlp.segment.token.NorToken.Attr;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 字符表，对BMP里面的每个字符事先算好半角转全角的结果和字符类型，查一次表就可以得到
+ * 每个字符对应一个int：
+ * <ul>
+ * <li>0~15位: 转成全角以后的字符</li>
+ * <li>16~19位: 全角字符的类型</li>
+ * <li>20~23位: 字符本身（不转全角）的类型</li>
+ * </ul>
+ * 原来的判断要调用Character.UnicodeBlock.of，CharMatcher.WHITESPACE和chineseNums.indexOf，
+ * 现在只在类加载的时候对所有字符算一遍
+ */
+public final class CharTable {
+    private static final String CHINESE_NUMS = "○〇幺一二三四五六七八九零十两百千万亿";
+    private static final Attr[] ATTRS = Attr.values();
+    private static final int[] TABLE = new int[Character.MAX_VALUE + 1];
+
+    static {
+        for (int ch = 0; ch <= Character.MAX_VALUE; ch++) {
+            char dch = computeSbc2dbc((char) ch);
+            TABLE[ch] = dch
+                    | computeCharType(dch).ordinal() << 16
+                    | computeCharType((char) ch).ordinal() << 20;
+        }
+    }
+
+    private CharTable() {
+    }
+
+    /**
+     * 查表
+     * @param ch 原始字符
+     * @return 全角字符和类型打包成的int，用{@link #normalized(int)}和{@link #attr(int)}取出来
+     */
+    public static int lookup(char ch) {
+        return TABLE[ch];
+    }
+
+    /**
+     * @param entry {@link #lookup(char)}的结果
+     * @return 转成全角以后的字符
+     */
+    public static char normalized(int entry) {
+        return (char) entry;
+    }
+
+    /**
+     * @param entry {@link #lookup(char)}的结果
+     * @return 全角字符的类型
+     */
+    public static Attr attr(int entry) {
+        return ATTRS[(entry >>> 16) & 0xF];
+    }
+
+    /**
+     * 半角转全角
+     */
+    public static char sbc2dbc(char ch) {
+        return (char) TABLE[ch];
+    }
+
+    /**
+     * 字符本身的类型，不做半角转全角
+     */
+    public static Attr charType(char ch) {
+        return ATTRS[(TABLE[ch] >>> 20) & 0xF];
+    }
+
+    /**
+     * 半角转全角，空格没有替换成'\u3000'
+     */
+    static char computeSbc2dbc(char c) {
+        if (c < '\u0020' || c > '\u007e')
+            return c;
+        if (c == '\u0020')
+            return c;
+        else
+            return (char) (c + '\uFEE0');
+    }
+
+    /**
+     * 按Unicode区块判断字符类型，只用来建表
+     */
+    static Attr computeCharType(char ch) {
+        Character.UnicodeBlock ub = Character.UnicodeBlock.of(ch);
+        if (CharMatcher.WHITESPACE.matches(ch))
+            return Attr.WHITESPACE;
+        else if ((ch >= '\uFF10' && ch <= '\uFF19') ||
+                (CHINESE_NUMS.indexOf(ch) != -1))
+            return Attr.NUMBER;
+        else if (ub == Character.UnicodeBlock.GENERAL_PUNCTUATION ||
+                ub == Character.UnicodeBlock.CJK_SYMBOLS_AND_PUNCTUATION ||
+                (ch >= '\uFF01' && ch <= '\uFF0E') ||
+                (ch >= '\uFF1A' && ch <= '\uFF20') ||
+                (ch >= '\uFF3B' && ch <= '\uFF40') ||
+                (ch >= '\uFF5B' && ch <= '\uFF5E'))
+            return Attr.PUNCT;
+        else if ((ch >= '\uFF21' && ch <= '\uFF3A') ||
+                (ch >= '\uFF41' && ch <= '\uFF5A'))
+            return Attr.ALPHA;
+        else if (ub == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS ||
+                ub == Character.UnicodeBlock.CJK_COMPATIBILITY_IDEOGRAPHS ||
+                ub == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS_EXTENSION_A)
+            return Attr.CHWORD;
+        else
+            return Attr.UNKNOW;
+    }
+
+    /**
+     * 比较查表和原来逐个判断的速度
+     * 参数是语料文件，默认用2010年的无标注训练语料
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            args = new String[] {"corpus/train/2010/Training-Unlabelled-A.txt",
+                    "corpus/train/2010/Training-Unlabelled-B.txt"};
+        }
+        List<String> lines = new ArrayList<String>();
+        long charCount = 0;
+        for (String filename: args) {
+            for (String line: FileUtils.readLines(new File(filename), "UTF-8")) {
+                lines.add(line);
+                charCount += line.length();
+            }
+        }
+        System.out.println("#chars " + charCount);
+
+        int rounds = 20;
+        for (int round = 0; round < 3; round++) {
+            long checksum = 0;
+            long startTime = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                for (String line: lines) {
+                    for (int i = 0; i < line.length(); i++) {
+                        char dch = computeSbc2dbc(line.charAt(i));
+                        checksum += dch + computeCharType(dch).ordinal();
+                    }
+                }
+            }
+            long computeTime = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                for (String line: lines) {
+                    for (int i = 0; i < line.length(); i++) {
+                        int entry = lookup(line.charAt(i));
+                        checksum -= normalized(entry) + attr(entry).ordinal();
+                    }
+                }
+            }
+            long tableTime = System.nanoTime() - startTime;
+
+            System.out.println(String.format("compute: %.1f Mchar/s, table: %.1f Mchar/s, checksum %d",
+                    charCount * rounds * 1000.0 / computeTime, charCount * rounds * 1000.0 / tableTime, checksum));
+        }
+    }
+}
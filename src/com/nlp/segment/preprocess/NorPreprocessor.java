@@ -6,8 +6,6 @@ import com.nlp.segment.token.Token;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * 正规化预处理模块，全部字符都转成全角再处理
@@ -19,17 +17,11 @@ import java.util.regex.Pattern;
  * 6. 其他字符属性设定为UNKNOW
  */
 public class NorPreprocessor implements Preprocessor{
-    // 匹配英文字符串
-    private Pattern alphaPattern = Pattern.compile("^[Ａ-Ｚ＿ａ-ｚ]+[Ａ-Ｚ＿－ａ-ｚ０-９]*");
-    // 匹配数字串
-    private Pattern digitPattern = Pattern.compile("^([０-９○〇幺一二三四五六七八九十零两百千万亿]+"  +
-            "[点．][０-９○〇幺一二三四五六七八九十零两百千万亿]+|" +
-            "[０-９○〇幺一二三四五六七八九十零两百千万亿]+)");
-    // 匹配简单的时间格式"12点32分"
-    private Pattern timePattern = Pattern.compile("^[０-９○〇幺一二三四五六七八九十零两百千万亿]+"  +
-            "[点．][０-９○〇幺一二三四五六七八九十零两百千万亿]+分");
-    // 匹配简单的数字串，不包括浮点
-    private Pattern simpleDigitPattern = Pattern.compile("^[０-９○〇幺一二三四五六七八九十零两百千万亿]+");
+    // 以前用正则匹配，现在在process里面直接扫描，规则和下面的正则一样
+    // 英文串: ^[Ａ-Ｚ＿ａ-ｚ]+[Ａ-Ｚ＿－ａ-ｚ０-９]*
+    // 数字串: ^(D+[点．]D+|D+)，D是[０-９○〇幺一二三四五六七八九十零两百千万亿]
+    // 简单的时间格式"12点32分": ^D+[点．]D+分，这时候只取前面的D+
+    private static final String CHINESE_DIGITS = "○〇幺一二三四五六七八九十零两百千万亿";
 
     /**
      *single byte string to double byte string
@@ -37,58 +29,92 @@ public class NorPreprocessor implements Preprocessor{
      * @return 返回全角字符串
      */
     public static String sbs2dbs(String str) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < str.length(); i++) {
-            sb.append(BaselinePreprocessor.sbc2dbc(str.charAt(i)));
+        char[] chars = new char[str.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = CharTable.sbc2dbc(str.charAt(i));
         }
-        return sb.toString();
+        return new String(chars);
     }
 
-    Attr judgeCharType(char ch) {
-        return BaselinePreprocessor.judgeCharType(ch);
+    /**
+     * 是否是英文串里面的字符，英文串的第一个字符一定是ALPHA
+     */
+    private static boolean isAlphaChar(char ch) {
+        return (ch >= '\uFF21' && ch <= '\uFF3A') || (ch >= '\uFF41' && ch <= '\uFF5A') ||
+                (ch >= '\uFF10' && ch <= '\uFF19') || ch == '＿' || ch == '－';
+    }
+
+    /**
+     * 是否是数字串里面的字符
+     */
+    private static boolean isDigitChar(char ch) {
+        return (ch >= '\uFF10' && ch <= '\uFF19') || CHINESE_DIGITS.indexOf(ch) != -1;
+    }
+
+    /**
+     * 从index开始跳过连续的数字
+     * @return 第一个不是数字的位置
+     */
+    private static int skipDigits(String text, int index) {
+        while (index < text.length() && isDigitChar(CharTable.sbc2dbc(text.charAt(index))))
+            index++;
+        return index;
+    }
+
+    /**
+     * 从index开始的Token的结尾，英文串、数字串和连续的空白是一个Token，其他字符单独是一个Token
+     * @return Token结尾的下标
+     */
+    public static int tokenEnd(String text, int index) {
+        Attr charType = CharTable.attr(CharTable.lookup(text.charAt(index)));
+        int end = index + 1;
+        if (charType == Attr.ALPHA) {
+            while (end < text.length() && isAlphaChar(CharTable.sbc2dbc(text.charAt(end))))
+                end++;
+        } else if (charType == Attr.NUMBER) {
+            // 整数部分
+            end = skipDigits(text, end);
+            if (end + 1 < text.length()) {
+                char sep = CharTable.sbc2dbc(text.charAt(end));
+                if (sep == '点' || sep == '．') {
+                    // 小数部分，至少一个数字
+                    int fractionEnd = skipDigits(text, end + 1);
+                    if (fractionEnd > end + 1) {
+                        // "12点32分"是时间，只取前面的数字，否则是小数
+                        if (fractionEnd == text.length() || CharTable.sbc2dbc(text.charAt(fractionEnd)) != '分')
+                            end = fractionEnd;
+                    }
+                }
+            }
+        } else if (charType == Attr.WHITESPACE) {
+            // 连续的空白合并成一个Token，以前这里没有处理，遇到空白会死循环
+            while (end < text.length() && CharTable.charType(text.charAt(end)) == Attr.WHITESPACE)
+                end++;
+        }
+        return end;
     }
 
     @Override
     public List<Token> process(String text) {
         List<Token> postTokens = new ArrayList<Token>();
-        String fullText = sbs2dbs(text);
-        for (int index = 0; index < fullText.length();) {
-            Attr charType = judgeCharType(fullText.charAt(index));
-            if (charType == Attr.CHWORD || charType == Attr.UNKNOW || charType == Attr.PUNCT) {
-                postTokens.add(new NorToken(String.valueOf(fullText.charAt(index)),
-                        text, index, index + 1, charType));
-                index++;
-            } else if (charType == Attr.ALPHA) {
-                Matcher matcher = alphaPattern.matcher(fullText.substring(index));
-                if (matcher.find()) {
-                    // 用<alpha>替换英文
-                    postTokens.add(new NorToken("<alpha>",
-                            text, index, index + matcher.end(), charType));
-                    index += matcher.end();
-                } else
-                    System.err.println("error");
+        for (int index = 0; index < text.length();) {
+            int entry = CharTable.lookup(text.charAt(index));
+            Attr charType = CharTable.attr(entry);
+            int end = tokenEnd(text, index);
+            if (charType == Attr.ALPHA) {
+                // 用<alpha>替换英文
+                postTokens.add(new NorToken("<alpha>", text, index, end, charType));
             } else if (charType == Attr.NUMBER) {
-                Matcher matcher = timePattern.matcher(fullText.substring(index));
-                if (matcher.find()) {
-                    Matcher digitMatcher = simpleDigitPattern.matcher(fullText.substring(index));
-                    if (digitMatcher.find()) {
-                        // 用<digit>替换数字
-                        postTokens.add(new NorToken("<digit>",
-                                text, index, index + digitMatcher.end(), charType));
-                        index += digitMatcher.end();
-                    } else
-                        System.err.println("error");
-                } else {
-                    Matcher digitMatcher = digitPattern.matcher(fullText.substring(index));
-                    if (digitMatcher.find()) {
-                        // 用<digit>替换数字
-                        postTokens.add(new NorToken("<digit>",
-                                text, index, index + digitMatcher.end(), charType));
-                        index += digitMatcher.end();
-                    } else
-                        System.err.println("error");
-                }
+                // 用<digit>替换数字
+                postTokens.add(new NorToken("<digit>", text, index, end, charType));
+            } else if (charType == Attr.WHITESPACE) {
+                postTokens.add(new NorToken(" ", text, index, end, charType));
+            } else {
+                // 汉字、标点和其他字符都单独成为一个Token
+                postTokens.add(new NorToken(String.valueOf(CharTable.normalized(entry)),
+                        text, index, end, charType));
             }
+            index = end;
         }
         return postTokens;
     }
@@ -0,0 +1,70 @@
+package com.nlp.tool;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.nlp.crf.CRFTagger;
+import com.nlp.crf.Weights;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 把CRF++的文本模型转换成二进制模型，二进制模型加载的时候直接映射文件，
+ * 配置文件的text_model_filename可以直接指向转换后的文件
+ * 权重可以保存成double/float/int16/int8，精度对F值的影响用WeightPrecisionReport评估
+ */
+public class CRFModelConverter {
+    @Parameter(names = "-i", description = "Text model filename", required = true)
+    String inputFilename;
+
+    @Parameter(names = "-o", description = "Binary model filename", required = true)
+    String outputFilename;
+
+    @Parameter(names = "-gzipped", description = "Whether the text model is gzipped", arity = 1)
+    boolean isGzipped = true;
+
+    @Parameter(names = "-charset", description = "Charset of the text model")
+    String charset = "UTF-8";
+
+    @Parameter(names = "-precision", description = "Weight precision: double, float, int16 or int8")
+    String precision = "double";
+
+    @Parameter(names = "-h", help = true, description = "Show help information")
+    boolean help;
+
+    public static void convert(File textModelFile, boolean isGzipped, String charset,
+                               File binaryModelFile, Weights.Precision precision) throws IOException {
+        long startTime = System.currentTimeMillis();
+        CRFTagger tagger = new CRFTagger(textModelFile, isGzipped, charset);
+        System.err.println("load text model: " + (System.currentTimeMillis() - startTime) + "ms");
+        tagger.writeBinary(binaryModelFile, precision);
+        System.err.println("maxid: " + tagger.maxId + "; " + textModelFile.length()
+                + " bytes => " + binaryModelFile.length() + " bytes");
+    }
+
+    static Weights.Precision parsePrecision(String precision) {
+        try {
+            return Weights.Precision.valueOf(precision.toUpperCase());
+        } catch (IllegalArgumentException exception) {
+            throw new ParameterException("unknown precision: " + precision);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        CRFModelConverter options = new CRFModelConverter();
+        try {
+            JCommander jCommander = new JCommander(options, args);
+            if (options.help) {
+                jCommander.usage();
+            } else {
+                convert(new File(options.inputFilename), options.isGzipped, options.charset,
+                        new File(options.outputFilename), parsePrecision(options.precision));
+            }
+        } catch (ParameterException exception) {
+            String[] tempArgs = {"-h"};
+            new JCommander(options, tempArgs).usage();
+            System.exit(1);
+        }
+    }
+}
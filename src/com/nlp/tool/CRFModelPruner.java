@@ -0,0 +1,274 @@
+package com.nlp.tool;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.nlp.segment.WordSegmenter;
+import gnu.trove.TIntArrayList;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 裁剪CRF++的文本模型，去掉所有标签上权重的最大绝对值不超过阈值的特征
+ * 每个U特征占ysize个权重，B特征占ysize * ysize个权重，
+ * 裁剪之后按照原来的顺序重新编号，B特征（转移权重）总是保留
+ * 模型读两遍，第一遍统计每个特征的最大绝对值，第二遍把保留的权重原样复制，
+ * 所以保留下来的特征的权重和原来的模型完全一样
+ * 指定了-config, -test和-golden的时候，分别用裁剪前后的模型切分测试语料，报告F值的变化
+ */
+public class CRFModelPruner {
+    @Parameter(names = "-i", description = "Text model filename", required = true)
+    String inputFilename;
+
+    @Parameter(names = "-o", description = "Pruned text model filename", required = true)
+    String outputFilename;
+
+    @Parameter(names = "-gzipped", description = "Whether the text models are gzipped", arity = 1)
+    boolean isGzipped = true;
+
+    @Parameter(names = "-charset", description = "Charset of the text models")
+    String charset = "UTF-8";
+
+    @Parameter(names = "-threshold", description = "Drop features whose max absolute weight is not greater than this")
+    double threshold = 0;
+
+    @Parameter(names = "-config", description = "Config file used to evaluate the pruned model")
+    String configFilename;
+
+    @Parameter(names = "-test", description = "Test directory used to evaluate the pruned model")
+    String testDirectory;
+
+    @Parameter(names = "-golden", description = "Golden directory used to evaluate the pruned model")
+    String goldenDirectory;
+
+    @Parameter(names = "-work", description = "Work directory of the evaluation")
+    String workDirectory = "prune_work";
+
+    @Parameter(names = "-h", help = true, description = "Show help information")
+    boolean help;
+
+    /**
+     * 裁剪的统计结果
+     */
+    public static class Result {
+        public int featureCount;
+        public int keptFeatureCount;
+        public int maxId;
+        public int keptMaxId;
+
+        @Override
+        public String toString() {
+            return String.format("features: %d => %d; maxid: %d => %d (%.2f%%)", featureCount, keptFeatureCount,
+                    maxId, keptMaxId, maxId == 0 ? 0 : 100.0 * keptMaxId / maxId);
+        }
+    }
+
+    private static BufferedReader openReader(File file, boolean isGzipped, String charset) throws IOException {
+        InputStream in = new FileInputStream(file);
+        if (isGzipped)
+            in = new GZIPInputStream(in);
+        return new BufferedReader(new InputStreamReader(in, charset));
+    }
+
+    private static BufferedWriter openWriter(File file, boolean isGzipped, String charset) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        if (isGzipped)
+            out = new GZIPOutputStream(out);
+        return new BufferedWriter(new OutputStreamWriter(out, charset));
+    }
+
+    private static String readHeader(BufferedReader br, String header) throws IOException {
+        String line = br.readLine();
+        if (line == null || !line.startsWith(header))
+            throw new IllegalStateException("wrong format: " + line);
+        return line;
+    }
+
+    /**
+     * 读到空行为止，返回读到的行数
+     */
+    private static int copySection(BufferedReader br, BufferedWriter bw) throws IOException {
+        String line;
+        int count = 0;
+        while ((line = br.readLine()) != null && line.trim().length() > 0) {
+            if (bw != null) {
+                bw.write(line);
+                bw.newLine();
+            }
+            count++;
+        }
+        if (bw != null)
+            bw.newLine();
+        return count;
+    }
+
+    /**
+     * 裁剪模型
+     * @param inputFile 原来的文本模型
+     * @param outputFile 裁剪后的文本模型
+     * @param isGzipped 两个模型是否经过gzip压缩
+     * @param charset 模型的字符编码
+     * @param threshold 最大绝对值不超过这个值的特征会被去掉
+     * @return 统计结果
+     */
+    public static Result prune(File inputFile, File outputFile, boolean isGzipped, String charset,
+                               double threshold) throws IOException {
+        Result result = new Result();
+        // 第一遍：特征的起始id和权重个数，以及每个权重的绝对值
+        TIntArrayList starts = new TIntArrayList();
+        TIntArrayList lengths = new TIntArrayList();
+        BitSet bigrams = new BitSet();
+        double[] absWeights;
+        BufferedReader br = openReader(inputFile, isGzipped, charset);
+        try {
+            readHeader(br, "version: ");
+            readHeader(br, "cost-factor: ");
+            result.maxId = Integer.parseInt(readHeader(br, "maxid: ").substring("maxid: ".length()));
+            readHeader(br, "xsize: ");
+            br.readLine();
+            int ysize = copySection(br, null);
+            copySection(br, null);
+
+            String line;
+            while ((line = br.readLine()) != null && line.trim().length() > 0) {
+                int space = line.indexOf(' ');
+                boolean bigram = line.charAt(space + 1) == 'B';
+                bigrams.set(starts.size(), bigram);
+                starts.add(Integer.parseInt(line.substring(0, space)));
+                lengths.add(bigram ? ysize * ysize : ysize);
+            }
+
+            absWeights = new double[result.maxId];
+            int i = 0;
+            while ((line = br.readLine()) != null && line.trim().length() > 0) {
+                absWeights[i++] = Math.abs(Double.parseDouble(line));
+            }
+            if (i != result.maxId)
+                throw new IllegalStateException("expect " + result.maxId + " weights, but got " + i);
+        } finally {
+            br.close();
+        }
+
+        // 保留的权重按照原来的顺序重新编号，去掉的权重是-1
+        boolean[] kept = new boolean[result.maxId];
+        result.featureCount = starts.size();
+        for (int f = 0; f < starts.size(); f++) {
+            int start = starts.getQuick(f);
+            int end = start + lengths.getQuick(f);
+            boolean keep = bigrams.get(f);
+            for (int i = start; i < end && !keep; i++) {
+                keep = absWeights[i] > threshold;
+            }
+            if (keep) {
+                Arrays.fill(kept, start, end, true);
+                result.keptFeatureCount++;
+            }
+        }
+        absWeights = null;
+        int[] newIds = new int[result.maxId];
+        for (int i = 0; i < result.maxId; i++) {
+            newIds[i] = kept[i] ? result.keptMaxId++ : -1;
+        }
+
+        // 第二遍：写出裁剪后的模型
+        br = openReader(inputFile, isGzipped, charset);
+        BufferedWriter bw = openWriter(outputFile, isGzipped, charset);
+        try {
+            bw.write(readHeader(br, "version: "));
+            bw.newLine();
+            bw.write(readHeader(br, "cost-factor: "));
+            bw.newLine();
+            readHeader(br, "maxid: ");
+            bw.write("maxid: " + result.keptMaxId);
+            bw.newLine();
+            bw.write(readHeader(br, "xsize: "));
+            bw.newLine();
+            br.readLine();
+            bw.newLine();
+            copySection(br, bw);
+            copySection(br, bw);
+
+            String line;
+            while ((line = br.readLine()) != null && line.trim().length() > 0) {
+                int space = line.indexOf(' ');
+                int newId = newIds[Integer.parseInt(line.substring(0, space))];
+                if (newId >= 0) {
+                    bw.write(Integer.toString(newId));
+                    bw.write(line, space, line.length() - space);
+                    bw.newLine();
+                }
+            }
+            bw.newLine();
+
+            int i = 0;
+            while ((line = br.readLine()) != null && line.trim().length() > 0) {
+                if (kept[i++]) {
+                    bw.write(line);
+                    bw.newLine();
+                }
+            }
+        } finally {
+            br.close();
+            bw.close();
+        }
+        return result;
+    }
+
+    /**
+     * 用裁剪前后的模型分别切分测试语料，返回F值
+     */
+    private static SegmentEvaluator.Score evaluate(Properties properties, File modelFile, File testDirectory,
+                                                   File goldenDirectory, File resultDirectory) throws IOException {
+        Properties current = new Properties();
+        current.putAll(properties);
+        current.setProperty("text_model_filename", modelFile.getPath());
+        if (!resultDirectory.exists())
+            resultDirectory.mkdirs();
+        new WordSegmenter(current).segmentDirectory(testDirectory, resultDirectory);
+        return SegmentEvaluator.evaluateDirectory(goldenDirectory, resultDirectory, false);
+    }
+
+    public static void main(String[] args) throws IOException {
+        CRFModelPruner options = new CRFModelPruner();
+        try {
+            JCommander jCommander = new JCommander(options, args);
+            if (options.help) {
+                jCommander.usage();
+                return;
+            }
+            if (options.configFilename != null && (options.testDirectory == null || options.goldenDirectory == null))
+                throw new ParameterException("-config requires -test and -golden");
+        } catch (ParameterException exception) {
+            String[] tempArgs = {"-h"};
+            new JCommander(options, tempArgs).usage();
+            System.exit(1);
+        }
+
+        File inputFile = new File(options.inputFilename);
+        File outputFile = new File(options.outputFilename);
+        long startTime = System.currentTimeMillis();
+        Result result = prune(inputFile, outputFile, options.isGzipped, options.charset, options.threshold);
+        System.err.println("prune model: " + (System.currentTimeMillis() - startTime) + "ms");
+        System.out.println(result);
+        System.out.println(String.format("model bytes: %d => %d", inputFile.length(), outputFile.length()));
+
+        if (options.configFilename != null) {
+            Properties properties = WordSegmenter.loadProperties(options.configFilename, "UTF-8");
+            File testDirectory = new File(options.testDirectory);
+            File goldenDirectory = new File(options.goldenDirectory);
+            File workDirectory = new File(options.workDirectory);
+            SegmentEvaluator.Score before = evaluate(properties, inputFile, testDirectory, goldenDirectory,
+                    new File(workDirectory, "original"));
+            SegmentEvaluator.Score after = evaluate(properties, outputFile, testDirectory, goldenDirectory,
+                    new File(workDirectory, "pruned"));
+            System.out.println("original: " + before);
+            System.out.println("pruned: " + after);
+            System.out.println(String.format("delta F: %+.4f", after.fScore() - before.fScore()));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.nlp.tool;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.nlp.segment.dict.Dictionary;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 把文本词典（每行 词 [词频]）编译成二进制镜像，镜像加载的时候直接映射文件，
+ * 配置文件的use_lexical_feature、combine_lexicon_filename可以直接指向编译后的文件
+ */
+public class DictionaryCompiler {
+    @Parameter(names = "-i", description = "Text dictionary filename", required = true)
+    String inputFilename;
+
+    @Parameter(names = "-o", description = "Dictionary image filename", required = true)
+    String outputFilename;
+
+    @Parameter(names = "-charset", description = "Charset of the text dictionary")
+    String charset = "UTF-8";
+
+    @Parameter(names = "-h", help = true, description = "Show help information")
+    boolean help;
+
+    public static void compile(File textDictFile, String charset, File imageFile) throws IOException {
+        long startTime = System.currentTimeMillis();
+        Dictionary dictionary = Dictionary.loadText(textDictFile.getPath(), charset);
+        System.err.println("load text dictionary: " + (System.currentTimeMillis() - startTime) + "ms");
+        dictionary.writeImage(imageFile);
+
+        startTime = System.currentTimeMillis();
+        Dictionary image = Dictionary.map(imageFile);
+        System.err.println("map dictionary image: " + (System.currentTimeMillis() - startTime) + "ms");
+        System.err.println("#words: " + image.size() + "; " + textDictFile.length()
+                + " bytes => " + imageFile.length() + " bytes");
+    }
+
+    public static void main(String[] args) throws IOException {
+        DictionaryCompiler options = new DictionaryCompiler();
+        try {
+            JCommander jCommander = new JCommander(options, args);
+            if (options.help) {
+                jCommander.usage();
+            } else {
+                compile(new File(options.inputFilename), options.charset, new File(options.outputFilename));
+            }
+        } catch (ParameterException exception) {
+            String[] tempArgs = {"-h"};
+            new JCommander(options, tempArgs).usage();
+            System.exit(1);
+        }
+    }
+}
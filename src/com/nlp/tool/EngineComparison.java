@@ -0,0 +1,120 @@
+package com.nlp.tool;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.nlp.segment.SegmenterModel;
+import com.nlp.segment.WordSegmenter;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 比较几个配置（比如engine = crf和engine = dict）的切分速度和F值
+ * 每个配置把测试目录下的文件切分一遍，结果写到输出目录下和配置文件同名的子目录里，
+ * 再用{@link SegmentEvaluator}和标准答案比较
+ * 速度只算切分的时间，不算加载模型和读写文件，先切几遍预热
+ */
+public class EngineComparison {
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int ROUNDS = 3;
+
+    @Parameter(names = "-config", description = "Config file, can be repeated", required = true)
+    List<String> configFilenames = new ArrayList<String>();
+
+    @Parameter(names = "-test", description = "Directory of unsegmented test files")
+    String testDirectory = "corpus/test/2010Test";
+
+    @Parameter(names = "-gold", description = "Directory of golden files with the same names")
+    String goldDirectory = "corpus/test/2010Golden";
+
+    @Parameter(names = "-o", description = "Output directory", required = true)
+    String outputDirectory;
+
+    @Parameter(names = "-h", help = true, description = "Show help information")
+    boolean help;
+
+    /**
+     * 测试的一个配置
+     * @return 切分结果的目录
+     */
+    static File run(String configFilename, File[] testFiles, File outDirectory) throws IOException {
+        long startTime = System.currentTimeMillis();
+        SegmenterModel model = new SegmenterModel(configFilename, "UTF-8");
+        WordSegmenter segmenter = new WordSegmenter(model);
+        long loadTime = System.currentTimeMillis() - startTime;
+
+        List<List<String>> files = new ArrayList<List<String>>();
+        long charCount = 0;
+        for (File testFile: testFiles) {
+            List<String> lines = FileUtils.readLines(testFile, "UTF-8");
+            files.add(lines);
+            for (String line: lines) {
+                charCount += line.length();
+            }
+        }
+
+        List<List<String>> results = null;
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            results = segment(segmenter, files);
+        }
+        startTime = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            results = segment(segmenter, files);
+        }
+        long segmentTime = (System.nanoTime() - startTime) / ROUNDS;
+        model.close();
+
+        FileUtils.forceMkdir(outDirectory);
+        for (int i = 0; i < testFiles.length; i++) {
+            FileUtils.writeLines(new File(outDirectory, testFiles[i].getName()), "UTF-8", results.get(i));
+        }
+        System.out.println(String.format("%s: load %dms, segment %.1fms, %.0f chars/s",
+                configFilename, loadTime, segmentTime / 1e6, charCount * 1e9 / segmentTime));
+        return outDirectory;
+    }
+
+    private static List<List<String>> segment(WordSegmenter segmenter, List<List<String>> files) {
+        List<List<String>> results = new ArrayList<List<String>>();
+        for (List<String> lines: files) {
+            List<String> result = new ArrayList<String>(lines.size());
+            for (String line: lines) {
+                result.add(segmenter.segmentResult(line).appendTo(new StringBuilder()).toString());
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    public static void compare(List<String> configFilenames, File testDirectory, File goldDirectory,
+                               File outputDirectory) throws IOException {
+        File[] testFiles = testDirectory.listFiles();
+        Arrays.sort(testFiles);
+        for (String configFilename: configFilenames) {
+            String name = new File(configFilename).getName().replaceFirst("\\.properties$", "");
+            File resultDirectory = run(configFilename, testFiles, new File(outputDirectory, name));
+            System.out.println(name + "\t" + SegmentEvaluator.evaluateDirectory(goldDirectory, resultDirectory, true));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        EngineComparison options = new EngineComparison();
+        try {
+            JCommander jCommander = new JCommander(options, args);
+            if (options.help) {
+                jCommander.usage();
+            } else {
+                compare(options.configFilenames, new File(options.testDirectory), new File(options.goldDirectory),
+                        new File(options.outputDirectory));
+            }
+        } catch (ParameterException exception) {
+            String[] tempArgs = {"-h"};
+            new JCommander(options, tempArgs).usage();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.nlp.tool;
+
+import com.google.common.base.CharMatcher;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 按照SIGHAN的方法计算切分结果的准确率、召回率和F值
+ * 标准答案和切分结果都是一行一句，词之间用空白隔开，两边按行对应
+ */
+public class SegmentEvaluator {
+    // 除了空白以外，BOM也不算内容
+    private static final CharMatcher SEPARATOR = CharMatcher.WHITESPACE.or(CharMatcher.is('\uFEFF'));
+
+    /**
+     * 词的个数统计
+     */
+    public static class Score {
+        public long goldCount;
+        public long resultCount;
+        public long correctCount;
+
+        public void add(Score other) {
+            goldCount += other.goldCount;
+            resultCount += other.resultCount;
+            correctCount += other.correctCount;
+        }
+
+        public double precision() {
+            return resultCount == 0 ? 0 : (double) correctCount / resultCount;
+        }
+
+        public double recall() {
+            return goldCount == 0 ? 0 : (double) correctCount / goldCount;
+        }
+
+        public double fScore() {
+            double p = precision(), r = recall();
+            return p + r == 0 ? 0 : 2 * p * r / (p + r);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("P=%.4f R=%.4f F=%.4f (#gold %d, #result %d, #correct %d)",
+                    precision(), recall(), fScore(), goldCount, resultCount, correctCount);
+        }
+    }
+
+    /**
+     * 计算一行的结果，词用去掉空白之后的[开始, 结束)位置表示，
+     * 开始和结束位置都相同才算切对
+     */
+    static void evaluateLine(String goldLine, String resultLine, Score score) {
+        int[] goldEnds = wordEnds(goldLine);
+        int[] resultEnds = wordEnds(resultLine);
+        score.goldCount += goldEnds.length;
+        score.resultCount += resultEnds.length;
+        int goldStart = 0, resultStart = 0;
+        for (int i = 0, j = 0; i < goldEnds.length && j < resultEnds.length;) {
+            if (goldEnds[i] == resultEnds[j]) {
+                if (goldStart == resultStart)
+                    score.correctCount++;
+                goldStart = goldEnds[i++];
+                resultStart = resultEnds[j++];
+            } else if (goldEnds[i] < resultEnds[j]) {
+                goldStart = goldEnds[i++];
+            } else {
+                resultStart = resultEnds[j++];
+            }
+        }
+    }
+
+    /**
+     * 每个词在去掉空白之后的结束位置
+     */
+    private static int[] wordEnds(String line) {
+        int count = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (!SEPARATOR.matches(line.charAt(i)) &&
+                    (i + 1 == line.length() || SEPARATOR.matches(line.charAt(i + 1))))
+                count++;
+        }
+        int[] ends = new int[count];
+        int pos = 0, index = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (SEPARATOR.matches(line.charAt(i)))
+                continue;
+            pos++;
+            if (i + 1 == line.length() || SEPARATOR.matches(line.charAt(i + 1)))
+                ends[index++] = pos;
+        }
+        return ends;
+    }
+
+    public static Score evaluate(File goldFile, File resultFile) throws IOException {
+        List<String> goldLines = FileUtils.readLines(goldFile, "UTF-8");
+        List<String> resultLines = FileUtils.readLines(resultFile, "UTF-8");
+        if (goldLines.size() != resultLines.size())
+            System.err.println("Warning: " + goldFile.getName() + " has " + goldLines.size()
+                    + " lines but result has " + resultLines.size());
+        Score score = new Score();
+        for (int i = 0; i < goldLines.size(); i++) {
+            String resultLine = i < resultLines.size() ? resultLines.get(i) : "";
+            evaluateLine(goldLines.get(i), resultLine, score);
+        }
+        return score;
+    }
+
+    /**
+     * 按文件名对应，计算整个目录的结果
+     * @param goldDirectory 标准答案目录
+     * @param resultDirectory 切分结果目录
+     * @param verbose 是否输出每个文件的结果
+     * @return 所有文件合起来的结果
+     */
+    public static Score evaluateDirectory(File goldDirectory, File resultDirectory, boolean verbose)
+            throws IOException {
+        Score total = new Score();
+        File[] goldFiles = goldDirectory.listFiles();
+        Arrays.sort(goldFiles);
+        for (File goldFile : goldFiles) {
+            File resultFile = new File(resultDirectory, goldFile.getName());
+            if (!goldFile.isFile() || !resultFile.exists())
+                continue;
+            Score score = evaluate(goldFile, resultFile);
+            if (verbose)
+                System.out.println(goldFile.getName() + "\t" + score);
+            total.add(score);
+        }
+        return total;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: SegmentEvaluator goldFile|goldDirectory resultFile|resultDirectory");
+            System.exit(1);
+        }
+        File gold = new File(args[0]);
+        File result = new File(args[1]);
+        if (gold.isDirectory())
+            System.out.println("total\t" + evaluateDirectory(gold, result, true));
+        else
+            System.out.println(evaluate(gold, result));
+    }
+}
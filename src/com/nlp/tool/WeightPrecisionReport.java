@@ -0,0 +1,54 @@
+package com.nlp.tool;
+
+import com.nlp.crf.Weights;
+import com.nlp.segment.WordSegmenter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * 评估模型权重精度对切分效果的影响
+ * 把配置文件里的文本模型分别转换成double/float/int16/int8的二进制模型，
+ * 在测试语料上切分，跟标准答案比较，输出每种精度的模型大小和F值变化
+ */
+public class WeightPrecisionReport {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("Usage: WeightPrecisionReport <config_file> <test_directory> " +
+                    "<golden_directory> <work_directory>");
+            System.exit(1);
+        }
+        Properties properties = WordSegmenter.loadProperties(args[0], "UTF-8");
+        File textModelFile = new File(properties.getProperty("text_model_filename"));
+        boolean isGzipped = Boolean.parseBoolean(properties.getProperty("text_model_is_gzipped", "true"));
+        String charset = properties.getProperty("text_model_file_charset", "UTF-8");
+        File testDirectory = new File(args[1]);
+        File goldenDirectory = new File(args[2]);
+        File workDirectory = new File(args[3]);
+        if (!workDirectory.exists())
+            workDirectory.mkdirs();
+
+        StringBuilder report = new StringBuilder();
+        report.append("precision\tmodel_bytes\tP\tR\tF\tdelta_F\n");
+        double baseF = 0;
+        for (Weights.Precision precision : Weights.Precision.values()) {
+            String name = precision.name().toLowerCase();
+            File binaryModelFile = new File(workDirectory, "model." + name + ".bin");
+            CRFModelConverter.convert(textModelFile, isGzipped, charset, binaryModelFile, precision);
+
+            Properties current = new Properties();
+            current.putAll(properties);
+            current.setProperty("text_model_filename", binaryModelFile.getPath());
+            File resultDirectory = new File(workDirectory, name);
+            new WordSegmenter(current).segmentDirectory(testDirectory, resultDirectory);
+
+            SegmentEvaluator.Score score = SegmentEvaluator.evaluateDirectory(goldenDirectory, resultDirectory, false);
+            if (precision == Weights.Precision.DOUBLE)
+                baseF = score.fScore();
+            report.append(String.format("%s\t%d\t%.4f\t%.4f\t%.4f\t%+.4f\n", name, binaryModelFile.length(),
+                    score.precision(), score.recall(), score.fScore(), score.fScore() - baseF));
+        }
+        System.out.print(report);
+    }
+}
@@ -0,0 +1,648 @@
+package com.nlp.tree;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * 双数组前缀树，代替{@link TrieTree}
+ * <p>状态s经过字符c转移到t = base[s] + code(c)，当且仅当check[t] == s，
+ * 每一步转移只要读两次数组。code是字符在字母表里的编号，
+ * 按字符在词典里出现的次数从多到少编号，常用字的编号小，数组更紧凑，
+ * 字母表里没有的字符编号是0，直接转移失败</p>
+ * <p>value[s]是以状态s结尾的词的值（比如词频），不是词的结尾就是-1，所以值不能是负数</p>
+ * <p>数组存放在CharBuffer和IntBuffer里面，建树的时候用堆上的数组，
+ * 从词典镜像读出来的时候直接映射文件，见{@link #write(DataOutputStream)}</p>
+ * 建好以后不再修改，可以被多个线程共享
+ */
+public class DoubleArrayTrie {
+    // 空的位置
+    private static final int FREE = -1;
+    // 不是词的结尾
+    private static final int NO_VALUE = -1;
+    // 建树的时候一个节点试了这么多空位还放不下，说明前面太满了
+    private static final int MAX_TRIES = 4096;
+
+    // 字符到字母表编号的映射，0表示不在字母表里
+    private final CharBuffer codes;
+    private final IntBuffer base;
+    private final IntBuffer check;
+    private final IntBuffer value;
+    // 数组实际用到的长度
+    private final int size;
+    // 词的个数
+    private final int wordCount;
+    // 最长的词的长度
+    private final int maxLength;
+
+    private DoubleArrayTrie(CharBuffer codes, IntBuffer base, IntBuffer check, IntBuffer value,
+                            int wordCount, int maxLength) {
+        this.codes = codes;
+        this.base = base;
+        this.check = check;
+        this.value = value;
+        this.size = check.capacity();
+        this.wordCount = wordCount;
+        this.maxLength = maxLength;
+        if (codes.capacity() != Character.MAX_VALUE + 1 || base.capacity() != size || value.capacity() != size)
+            throw new IllegalStateException("wrong double array size: " + size);
+    }
+
+    /**
+     * 从词表建树，值是词在列表里的下标，重复的词保留第一次出现的下标
+     * @param words 词表
+     */
+    public static DoubleArrayTrie build(List<String> words) {
+        int[] values = new int[words.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+        return build(words, values);
+    }
+
+    /**
+     * 从词表建树
+     * @param words 词表，空串会被忽略
+     * @param values 每个词的值，不能是负数，重复的词保留第一个值
+     */
+    public static DoubleArrayTrie build(final List<String> words, int[] values) {
+        if (words.size() != values.length)
+            throw new IllegalArgumentException("words.size() " + words.size() + " != values.length " + values.length);
+
+        // 按字典序排序，同一个前缀的词排在一起，相同的词保留第一个
+        Integer[] order = new Integer[words.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int c = words.get(a).compareTo(words.get(b));
+                return c != 0 ? c : a.compareTo(b);
+            }
+        });
+        List<String> sortedWords = new ArrayList<String>(order.length);
+        int[] sortedValues = new int[order.length];
+        for (Integer i: order) {
+            String word = words.get(i);
+            if (word.isEmpty() || (!sortedWords.isEmpty() && sortedWords.get(sortedWords.size() - 1).equals(word)))
+                continue;
+            if (values[i] < 0)
+                throw new IllegalArgumentException("negative value " + values[i] + " for " + word);
+            sortedValues[sortedWords.size()] = values[i];
+            sortedWords.add(word);
+        }
+
+        Builder builder = new Builder(buildAlphabet(sortedWords));
+        builder.construct(sortedWords, sortedValues);
+        return new DoubleArrayTrie(CharBuffer.wrap(builder.codes), IntBuffer.wrap(builder.base),
+                IntBuffer.wrap(builder.check), IntBuffer.wrap(builder.value), sortedWords.size(), builder.maxLength);
+    }
+
+    /**
+     * 读入词典文件建树，每行第一列是词，第二列如果是整数就作为词的值（比如词频），否则值是0
+     * @param filename 词典文件，例如corpus/webdict/webdict_with_freq.txt
+     * @param charset 文件编码
+     */
+    public static DoubleArrayTrie load(String filename, String charset) throws IOException {
+        List<String> words = new ArrayList<String>();
+        List<Integer> values = new ArrayList<Integer>();
+        readText(filename, charset, words, values);
+        int[] valueArray = new int[values.size()];
+        for (int i = 0; i < valueArray.length; i++) {
+            valueArray[i] = values.get(i);
+        }
+        return build(words, valueArray);
+    }
+
+    /**
+     * 读入词典文件里的词和值，追加到words和values后面，格式和{@link #load(String, String)}一样，
+     * 空行跳过，值不是整数或者是负数的时候是0
+     * @param filename 词典文件
+     * @param charset 文件编码
+     */
+    public static void readText(String filename, String charset, List<String> words, List<Integer> values)
+            throws IOException {
+        BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(filename), charset));
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty())
+                    continue;
+                String[] items = line.split("\\s+");
+                int value = 0;
+                if (items.length > 1) {
+                    try {
+                        value = Math.max(0, Integer.parseInt(items[1]));
+                    } catch (NumberFormatException e) {
+                        value = 0;
+                    }
+                }
+                words.add(items[0]);
+                values.add(value);
+            }
+        } finally {
+            br.close();
+        }
+    }
+
+    /**
+     * 把双数组写到输出流里，格式是
+     * <pre>
+     * int    数组长度size，词的个数，最长的词的长度
+     * char[65536]  字符到字母表编号的映射
+     * int[size]    base
+     * int[size]    check
+     * int[size]    value
+     * </pre>
+     * 用{@link #read(ByteBuffer)}可以从映射的文件直接读回来
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        out.writeInt(wordCount);
+        out.writeInt(maxLength);
+        for (int ch = 0; ch <= Character.MAX_VALUE; ch++) {
+            out.writeChar(codes.get(ch));
+        }
+        for (int i = 0; i < size; i++) {
+            out.writeInt(base.get(i));
+        }
+        for (int i = 0; i < size; i++) {
+            out.writeInt(check.get(i));
+        }
+        for (int i = 0; i < size; i++) {
+            out.writeInt(value.get(i));
+        }
+    }
+
+    /**
+     * 从buffer的当前位置读出{@link #write(DataOutputStream)}写的双数组，
+     * 不复制数据，数组直接是buffer的视图，读完以后buffer的位置移到双数组后面
+     * @param buffer 一般是映射的文件
+     */
+    public static DoubleArrayTrie read(ByteBuffer buffer) {
+        int size = buffer.getInt();
+        int wordCount = buffer.getInt();
+        int maxLength = buffer.getInt();
+        if (size <= 0 || (long) size * 12 > buffer.remaining())
+            throw new IllegalStateException("wrong double array size: " + size);
+        CharBuffer codes = slice(buffer, 2 * (Character.MAX_VALUE + 1)).asCharBuffer();
+        IntBuffer base = slice(buffer, 4 * size).asIntBuffer();
+        IntBuffer check = slice(buffer, 4 * size).asIntBuffer();
+        IntBuffer value = slice(buffer, 4 * size).asIntBuffer();
+        return new DoubleArrayTrie(codes, base, check, value, wordCount, maxLength);
+    }
+
+    /**
+     * 从buffer的当前位置切出length个字节，buffer的位置往后移
+     */
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        if (length > buffer.remaining())
+            throw new IllegalStateException("unexpected end of buffer");
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+
+    /**
+     * 按字符出现的次数从多到少编号，从1开始
+     */
+    private static char[] buildAlphabet(List<String> words) {
+        final int[] counts = new int[Character.MAX_VALUE + 1];
+        List<Character> chars = new ArrayList<Character>();
+        for (String word: words) {
+            for (int i = 0; i < word.length(); i++) {
+                char ch = word.charAt(i);
+                if (counts[ch]++ == 0)
+                    chars.add(ch);
+            }
+        }
+        if (chars.size() >= Character.MAX_VALUE)
+            throw new IllegalArgumentException("alphabet is too large: " + chars.size());
+        Collections.sort(chars, new Comparator<Character>() {
+            @Override
+            public int compare(Character a, Character b) {
+                return counts[b] != counts[a] ? counts[b] - counts[a] : a.compareTo(b);
+            }
+        });
+        char[] codes = new char[Character.MAX_VALUE + 1];
+        for (int i = 0; i < chars.size(); i++) {
+            codes[chars.get(i)] = (char) (i + 1);
+        }
+        return codes;
+    }
+
+    /**
+     * 一个还没有放到数组里的节点，对应排好序的词表里[lo, hi)这些词的前depth个字符
+     */
+    private static class Node {
+        final int state;
+        final int lo;
+        final int hi;
+        final int depth;
+
+        Node(int state, int lo, int hi, int depth) {
+            this.state = state;
+            this.lo = lo;
+            this.hi = hi;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * 建树的时候用堆上的数组，建好以后包装成{@link DoubleArrayTrie}
+     */
+    private static final class Builder {
+        final char[] codes;
+        int[] base;
+        int[] check;
+        int[] value;
+        // 被占用的位置指向后面的某个位置，顺着找下去可以找到下一个空位
+        int[] freeLink;
+        // 数组实际用到的长度
+        int size;
+        // 最长的词的长度
+        int maxLength;
+
+        Builder(char[] codes) {
+            this.codes = codes;
+        }
+
+        /**
+         * 按层建树，每个节点找一个base，让所有孩子的位置都是空的
+         */
+        private void construct(List<String> words, int[] values) {
+            allocate(Math.max(1024, words.size() * 2));
+            // 根节点是0
+            check[0] = 0;
+            freeLink[0] = 1;
+            // 有多个孩子的节点从这个位置开始找空位
+            int nextCheckPos = 1;
+            int[] triedPos = new int[MAX_TRIES];
+            size = 1;
+            for (String word: words) {
+                maxLength = Math.max(maxLength, word.length());
+            }
+
+            int[] childCodes = new int[Character.MAX_VALUE + 1];
+            int[] childLo = new int[Character.MAX_VALUE + 2];
+            LinkedList<Node> queue = new LinkedList<Node>();
+            if (!words.isEmpty())
+                queue.add(new Node(0, 0, words.size(), 0));
+            while (!queue.isEmpty()) {
+                Node node = queue.removeFirst();
+                int lo = node.lo;
+                // 排好序以后，和前缀一样长的词排在最前面
+                if (words.get(lo).length() == node.depth) {
+                    value[node.state] = values[lo];
+                    lo++;
+                }
+                if (lo == node.hi)
+                    continue;
+
+                // 孩子按字符分组
+                int childCount = 0;
+                int minCode = Integer.MAX_VALUE;
+                int maxCode = 0;
+                char last = 0;
+                for (int i = lo; i < node.hi; i++) {
+                    char ch = words.get(i).charAt(node.depth);
+                    if (i == lo || ch != last) {
+                        childCodes[childCount] = codes[ch];
+                        childLo[childCount] = i;
+                        childCount++;
+                        minCode = Math.min(minCode, codes[ch]);
+                        maxCode = Math.max(maxCode, codes[ch]);
+                        last = ch;
+                    }
+                }
+                childLo[childCount] = node.hi;
+
+                // 找一个base，让所有孩子的位置都是空的：最小的孩子编号放在一个空位上，再看其他孩子
+                // 只有一个孩子的节点随便找个空位就行，从头开始找，把前面的空位填上
+                int pos = findFree(childCount == 1 ? minCode + 1 : Math.max(nextCheckPos, minCode + 1));
+                int tries = 0;
+                int b;
+                while (true) {
+                    triedPos[tries % MAX_TRIES] = pos;
+                    tries++;
+                    b = pos - minCode;
+                    ensureCapacity(b + maxCode + 1);
+                    boolean fits = true;
+                    for (int k = 0; k < childCount; k++) {
+                        if (check[b + childCodes[k]] != FREE) {
+                            fits = false;
+                            break;
+                        }
+                    }
+                    if (fits)
+                        break;
+                    pos = findFree(pos + 1);
+                }
+                // 试了太多空位，说明前面已经很满了，下次有多个孩子的节点只从最近试过的MAX_TRIES个空位开始找
+                if (tries > MAX_TRIES)
+                    nextCheckPos = triedPos[tries % MAX_TRIES];
+
+                base[node.state] = b;
+                for (int k = 0; k < childCount; k++) {
+                    int t = b + childCodes[k];
+                    check[t] = node.state;
+                    freeLink[t] = t + 1;
+                    size = Math.max(size, t + 1);
+                    queue.add(new Node(t, childLo[k], childLo[k + 1], node.depth + 1));
+                }
+            }
+
+            // 去掉后面没用的空间
+            base = Arrays.copyOf(base, size);
+            check = Arrays.copyOf(check, size);
+            value = Arrays.copyOf(value, size);
+            freeLink = null;
+        }
+
+        /**
+         * 找从pos开始的第一个空位，顺便压缩路径
+         */
+        private int findFree(int pos) {
+            ensureCapacity(pos + 1);
+            int free = pos;
+            while (check[free] != FREE) {
+                free = freeLink[free];
+                ensureCapacity(free + 1);
+            }
+            while (pos != free) {
+                int next = freeLink[pos];
+                freeLink[pos] = free;
+                pos = next;
+            }
+            return free;
+        }
+
+        private void allocate(int capacity) {
+            base = new int[capacity];
+            check = new int[capacity];
+            value = new int[capacity];
+            freeLink = new int[capacity];
+            Arrays.fill(check, FREE);
+            Arrays.fill(value, NO_VALUE);
+            for (int i = 0; i < capacity; i++) {
+                freeLink[i] = i + 1;
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= check.length)
+                return;
+            int newCapacity = Math.max(capacity, check.length + (check.length >> 1));
+            int oldCapacity = check.length;
+            base = Arrays.copyOf(base, newCapacity);
+            check = Arrays.copyOf(check, newCapacity);
+            value = Arrays.copyOf(value, newCapacity);
+            freeLink = Arrays.copyOf(freeLink, newCapacity);
+            Arrays.fill(check, oldCapacity, newCapacity, FREE);
+            Arrays.fill(value, oldCapacity, newCapacity, NO_VALUE);
+            for (int i = oldCapacity; i < newCapacity; i++) {
+                freeLink[i] = i + 1;
+            }
+        }
+    }
+
+    /**
+     * 从状态state经过字符ch转移
+     * @return 转移到的状态，失败返回-1
+     */
+    private int transition(int state, char ch) {
+        int code = codes.get(ch);
+        if (code == 0)
+            return -1;
+        int t = base.get(state) + code;
+        if (t < size && check.get(t) == state)
+            return t;
+        return -1;
+    }
+
+    /**
+     * 查询词的值
+     * @return 词的值，不在词典里返回-1
+     */
+    public int get(CharSequence word) {
+        int state = 0;
+        for (int i = 0; i < word.length(); i++) {
+            state = transition(state, word.charAt(i));
+            if (state < 0)
+                return NO_VALUE;
+        }
+        return value.get(state);
+    }
+
+    /**
+     * 查询text[begin, end)的值
+     * @return 词的值，不在词典里返回-1
+     */
+    public int get(char[] text, int begin, int end) {
+        int state = 0;
+        for (int i = begin; i < end; i++) {
+            state = transition(state, text[i]);
+            if (state < 0)
+                return NO_VALUE;
+        }
+        return value.get(state);
+    }
+
+    /**
+     * 查询text[begin, end)的值，不用先substring
+     * @return 词的值，不在词典里返回-1
+     */
+    public int get(CharSequence text, int begin, int end) {
+        int state = 0;
+        for (int i = begin; i < end; i++) {
+            state = transition(state, text.charAt(i));
+            if (state < 0)
+                return NO_VALUE;
+        }
+        return value.get(state);
+    }
+
+    public boolean contains(CharSequence word) {
+        return get(word) >= 0;
+    }
+
+    /**
+     * 找出从begin开始的所有词，也就是text[begin, end)所有在词典里的前缀
+     * @param text 文本
+     * @param begin 开始位置
+     * @param end 结束位置，不会匹配超过这个位置
+     * @param lengths 输出每个词的长度，从短到长，长度至少是{@link #getMaxLength()}
+     * @param values 输出每个词的值，不需要的话可以是null
+     * @return 找到的词的个数
+     */
+    public int commonPrefixSearch(char[] text, int begin, int end, int[] lengths, int[] values) {
+        int count = 0;
+        int state = 0;
+        for (int i = begin; i < end; i++) {
+            state = transition(state, text[i]);
+            if (state < 0)
+                break;
+            if (value.get(state) >= 0) {
+                lengths[count] = i + 1 - begin;
+                if (values != null)
+                    values[count] = value.get(state);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 和{@link #commonPrefixSearch(char[], int, int, int[], int[])}一样，直接在CharSequence上查，不用先拷贝
+     */
+    public int commonPrefixSearch(CharSequence text, int begin, int end, int[] lengths, int[] values) {
+        int count = 0;
+        int state = 0;
+        for (int i = begin; i < end; i++) {
+            state = transition(state, text.charAt(i));
+            if (state < 0)
+                break;
+            if (value.get(state) >= 0) {
+                lengths[count] = i + 1 - begin;
+                if (values != null)
+                    values[count] = value.get(state);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 从begin开始的最长的词
+     * @param text 文本
+     * @param begin 开始位置
+     * @param end 结束位置，不会匹配超过这个位置
+     * @return 最长的词的长度，没有词返回0
+     */
+    public int longestMatch(char[] text, int begin, int end) {
+        int length = 0;
+        int state = 0;
+        for (int i = begin; i < end; i++) {
+            state = transition(state, text[i]);
+            if (state < 0)
+                break;
+            if (value.get(state) >= 0)
+                length = i + 1 - begin;
+        }
+        return length;
+    }
+
+    /**
+     * 和{@link #longestMatch(char[], int, int)}一样，直接在CharSequence上查
+     */
+    public int longestMatch(CharSequence text, int begin, int end) {
+        int length = 0;
+        int state = 0;
+        for (int i = begin; i < end; i++) {
+            state = transition(state, text.charAt(i));
+            if (state < 0)
+                break;
+            if (value.get(state) >= 0)
+                length = i + 1 - begin;
+        }
+        return length;
+    }
+
+    /**
+     * @return 词的个数
+     */
+    public int size() {
+        return wordCount;
+    }
+
+    /**
+     * @return 所有词的值的和，比如值是词频的时候就是总词频
+     */
+    public long sumValues() {
+        long sum = 0;
+        for (int i = 0; i < size; i++) {
+            int v = value.get(i);
+            if (v >= 0)
+                sum += v;
+        }
+        return sum;
+    }
+
+    /**
+     * @return 最长的词的长度
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * @return 双数组的长度
+     */
+    public int getArraySize() {
+        return size;
+    }
+
+    /**
+     * 和{@link TrieTree#main(String[])}一样的测试，比较两种树建树和查询所有词的时间（纳秒）
+     * 参数是词典文件和TrieTree测试的词数，TrieTree的子节点是LinkedList，按下标二分查找很慢，
+     * 全部的词要跑半个多小时，所以只用前面一部分词和双数组Trie比较
+     */
+    public static void main(String[] args) throws IOException {
+        String filename = args.length > 0 ? args[0] : "corpus/webdict/webdict_with_freq.txt";
+        int trieTreeLimit = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        ArrayList<String> allWords = new ArrayList<String>();
+        readText(filename, "UTF-8", allWords, new ArrayList<Integer>());
+        List<String> words = allWords.subList(0, Math.min(trieTreeLimit, allWords.size()));
+        System.out.println("#words " + allWords.size() + ", TrieTree #words " + words.size());
+
+        // TrieTree很慢，只测一次
+        long startTime = System.nanoTime();
+        TrieTree trieTree = new TrieTree();
+        for (String word: words) {
+            trieTree.add(word);
+        }
+        long trieBuild = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        int trieMissing = 0;
+        for (String word: words) {
+            if (!trieTree.find(word))
+                trieMissing++;
+        }
+        long trieFind = System.nanoTime() - startTime;
+        System.out.println("TrieTree        build " + trieBuild + " find " + trieFind + " missing " + trieMissing);
+
+        for (int round = 0; round < 3; round++) {
+            benchmark(words);
+        }
+        for (int round = 0; round < 3; round++) {
+            benchmark(allWords);
+        }
+    }
+
+    private static void benchmark(List<String> words) {
+        long startTime = System.nanoTime();
+        DoubleArrayTrie doubleArrayTrie = build(words);
+        long datBuild = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        int datMissing = 0;
+        for (String word: words) {
+            if (!doubleArrayTrie.contains(word))
+                datMissing++;
+        }
+        long datFind = System.nanoTime() - startTime;
+        System.out.println("DoubleArrayTrie #words " + words.size() + " build " + datBuild + " find " + datFind
+                + " missing " + datMissing + " array size " + doubleArrayTrie.getArraySize());
+    }
+}
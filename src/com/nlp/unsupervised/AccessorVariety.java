@@ -11,9 +11,9 @@ import org.jsuffixarrays.SuffixData;
 
 import java.io.*;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -22,9 +22,9 @@ import java.util.regex.Pattern;
  * 提供新的AV特征使用方法，详细资料参考论文
  */
 public class AccessorVariety {
-    // 存储字串的AV值
-    private HashMap<String, Integer> subseqAV =
-            new HashMap<String,Integer>();
+    // 存储字串的AV值，多个线程会同时查询和写入
+    private final ConcurrentHashMap<String, Integer> subseqAV =
+            new ConcurrentHashMap<String, Integer>();
     // 所有语料的内容
     protected String content;
     // 后缀数组
@@ -159,8 +159,9 @@ public class AccessorVariety {
      * @return AV值
      */
     public int querySubseqAV(String subseq) {
-        if (this.subseqAV.containsKey(subseq))
-            return this.subseqAV.get(subseq);
+        Integer cached = this.subseqAV.get(subseq);
+        if (cached != null)
+            return cached;
         else {
             // 如果这个subseq是第一次查询
             // 需要根据后缀数组的信息查找
@@ -208,7 +209,8 @@ public class AccessorVariety {
             leftVal += leftSet.size();
             rightVal += rightSet.size();
             int minVal = Math.min(leftVal, rightVal);
-            this.subseqAV.put(subseq, minVal);
+            // 两个线程同时算同一个字串得到的结果是一样的，谁先放进去都可以
+            this.subseqAV.putIfAbsent(subseq, minVal);
             return minVal;
         }
     }
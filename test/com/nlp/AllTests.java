@@ -0,0 +1,35 @@
+package com.nlp;
+
+import com.nlp.crf.CRFTaggerTest;
+import com.nlp.segment.FeatureExtractorTest;
+import com.nlp.segment.SegmenterModelTest;
+import com.nlp.segment.TokenReaderTest;
+import com.nlp.segment.dict.DictionaryRegistryTest;
+import com.nlp.segment.dict.DictionaryTest;
+import com.nlp.segment.dict.UserDictionaryTest;
+import com.nlp.segment.feature.LexicalFeatureTest;
+import com.nlp.segment.feature.WebdictFeatureTest;
+import com.nlp.segment.postprocess.CombinePostProcessorTest;
+import com.nlp.segment.postprocess.SpanMergerTest;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+/**
+ * 全部测试，新加的测试类要加到这里
+ */
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+        CRFTaggerTest.class,
+        DictionaryTest.class,
+        UserDictionaryTest.class,
+        WebdictFeatureTest.class,
+        CombinePostProcessorTest.class,
+        SpanMergerTest.class,
+        TokenReaderTest.class,
+        FeatureExtractorTest.class,
+        SegmenterModelTest.class,
+        LexicalFeatureTest.class,
+        DictionaryRegistryTest.class
+})
+public class AllTests {
+}
@@ -0,0 +1,251 @@
+package com.nlp.crf;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 用一个随机生成的小模型检查文本模型和二进制模型的解码结果一样
+ */
+public class CRFTaggerTest {
+    private static final String[] LABELS = {"B", "E", "M", "S"};
+    private static final String[] TEMPLATES = {"U00:%x[-1,0]", "U01:%x[0,0]", "U02:%x[1,0]", "U03:%x[0,0]/%x[0,1]"};
+    private static final String CHARS = "abcdefg";
+    private static final String TYPES = "xy";
+    private static final double TRANSITION_FACTOR = 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File textModelFile;
+    private List<List<String[]>> sentences;
+
+    @Before
+    public void setUp() throws IOException {
+        Random random = new Random(20141017);
+        textModelFile = folder.newFile("model.txt.gz");
+        writeTextModel(textModelFile, random);
+        sentences = new ArrayList<List<String[]>>();
+        for (int t = 0; t < 200; t++) {
+            List<String[]> sentence = new ArrayList<String[]>();
+            int size = 1 + random.nextInt(30);
+            for (int i = 0; i < size; i++) {
+                sentence.add(new String[]{String.valueOf(CHARS.charAt(random.nextInt(CHARS.length()))),
+                        String.valueOf(TYPES.charAt(random.nextInt(TYPES.length())))});
+            }
+            sentences.add(sentence);
+        }
+    }
+
+    /**
+     * 写一个CRF++ crf_learn -t格式的文本模型，随机去掉一些特征，让查询有命中也有不命中
+     */
+    private static void writeTextModel(File file, Random random) throws IOException {
+        List<String> features = new ArrayList<String>();
+        List<String> values = new ArrayList<String>();
+        for (int i = 0; i < CHARS.length(); i++) {
+            values.add(String.valueOf(CHARS.charAt(i)));
+        }
+        values.add(CRFTagger.BOS[0]);
+        values.add(CRFTagger.EOS[0]);
+        for (String value: values) {
+            features.add("U00:" + value);
+            features.add("U01:" + value);
+            features.add("U02:" + value);
+            for (int k = 0; k < TYPES.length(); k++) {
+                features.add("U03:" + value + "/" + TYPES.charAt(k));
+            }
+        }
+
+        int ysize = LABELS.length;
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(file)), "UTF-8"));
+        try {
+            List<String> dict = new ArrayList<String>();
+            int maxId = ysize * ysize;
+            dict.add("0 B");
+            for (String feature: features) {
+                if (random.nextInt(5) == 0)
+                    continue;
+                dict.add(maxId + " " + feature);
+                maxId += ysize;
+            }
+            out.print("version: 100\ncost-factor: 1\nmaxid: " + maxId + "\nxsize: 2\n\n");
+            for (String label: LABELS) {
+                out.print(label + "\n");
+            }
+            out.print("\n");
+            for (String template: TEMPLATES) {
+                out.print(template + "\n");
+            }
+            out.print("B\n\n");
+            for (String line: dict) {
+                out.print(line + "\n");
+            }
+            out.print("\n");
+            // 转移矩阵的权重比状态特征大很多，和真实的模型一样
+            for (int i = 0; i < maxId; i++) {
+                double weight = random.nextGaussian();
+                out.print((i < ysize * ysize ? TRANSITION_FACTOR * weight : weight) + "\n");
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void assertSameTags(CRFTagger expected, CRFTagger actual, List<List<String[]>> sentences) {
+        for (List<String[]> sentence: sentences) {
+            assertArrayEquals(expected.tag(sentence), actual.tag(sentence));
+        }
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws IOException {
+        CRFTagger text = CRFTagger.load(textModelFile, true, "UTF-8");
+        assertFalse(CRFTagger.isBinaryModel(textModelFile));
+        File binaryModelFile = folder.newFile("model.bin");
+        text.writeBinary(binaryModelFile);
+        assertTrue(CRFTagger.isBinaryModel(binaryModelFile));
+
+        CRFTagger binary = CRFTagger.load(binaryModelFile, true, "UTF-8");
+        assertEquals(text.xsize, binary.xsize);
+        assertEquals(text.ysize, binary.ysize);
+        assertEquals(text.maxId, binary.maxId);
+        assertEquals(text.stateStartIndex, binary.stateStartIndex);
+        assertArrayEquals(text.y, binary.y);
+        assertArrayEquals(text.templates, binary.templates);
+        assertEquals(Weights.Precision.DOUBLE, binary.alpha.getPrecision());
+        for (int i = 0; i < text.maxId; i++) {
+            assertEquals(text.alpha.get(i), binary.alpha.get(i), 0);
+        }
+        assertSameTags(text, binary, sentences);
+
+        // 二进制模型再保存一次，内容不变
+        File copy = folder.newFile("copy.bin");
+        binary.writeBinary(copy);
+        assertSameTags(text, CRFTagger.load(copy, true, "UTF-8"), sentences);
+        assertEquals(binaryModelFile.length(), copy.length());
+    }
+
+    /**
+     * 降低精度保存以后，每个权重的误差不超过量化步长的一半，
+     * 整数精度的步长按每个标签的状态特征和转移矩阵分别计算
+     */
+    @Test
+    public void testReducedPrecision() throws IOException {
+        CRFTagger text = CRFTagger.load(textModelFile, true, "UTF-8");
+        int ysize = text.ysize;
+        double[] groupMaxAbs = new double[ysize + 1];
+        double maxAbs = 0;
+        for (int i = 0; i < text.maxId; i++) {
+            int group = group(text, i);
+            groupMaxAbs[group] = Math.max(groupMaxAbs[group], Math.abs(text.alpha.get(i)));
+            maxAbs = Math.max(maxAbs, Math.abs(text.alpha.get(i)));
+        }
+        // 转移矩阵的权重大很多，共用一个比例的话INT8的状态特征会损失很多精度
+        assertTrue(groupMaxAbs[ysize] > 5 * groupMaxAbs[0]);
+        Weights.Precision[] precisions = {Weights.Precision.FLOAT, Weights.Precision.INT16, Weights.Precision.INT8};
+        int[] levels = {0, Short.MAX_VALUE, Byte.MAX_VALUE};
+        File doubleModelFile = folder.newFile("model.DOUBLE.bin");
+        text.writeBinary(doubleModelFile, Weights.Precision.DOUBLE);
+        for (int p = 0; p < precisions.length; p++) {
+            File binaryModelFile = folder.newFile("model." + precisions[p] + ".bin");
+            text.writeBinary(binaryModelFile, precisions[p]);
+            // 只有权重部分变小，整数精度的文件头多了ysize + 1个比例，是8字节的倍数，不影响对齐
+            int scaleBytes = levels[p] == 0 ? 0 : 8 * (ysize + 1);
+            assertEquals((long) (Weights.Precision.DOUBLE.bytes - precisions[p].bytes) * text.maxId,
+                    doubleModelFile.length() - binaryModelFile.length() + scaleBytes);
+            CRFTagger binary = CRFTagger.load(binaryModelFile, true, "UTF-8");
+            assertEquals(precisions[p], binary.alpha.getPrecision());
+            for (int i = 0; i < text.maxId; i++) {
+                double tolerance = levels[p] == 0 ? maxAbs * 1e-7 : groupMaxAbs[group(text, i)] / levels[p] / 2;
+                assertEquals(text.alpha.get(i), binary.alpha.get(i), tolerance * 1.000001);
+            }
+            // 转回DOUBLE以后和量化的权重一样
+            Weights converted = binary.alpha.convert(Weights.Precision.DOUBLE, ysize, binary.stateStartIndex);
+            for (int i = 0; i < text.maxId; i++) {
+                assertEquals(binary.alpha.get(i), converted.get(i), 0);
+            }
+            // 再保存一次，比例和权重都不变
+            File copy = new File(folder.getRoot(), "copy." + precisions[p] + ".bin");
+            binary.writeBinary(copy);
+            assertEquals(binaryModelFile.length(), copy.length());
+            CRFTagger reloaded = CRFTagger.load(copy, true, "UTF-8");
+            for (int i = 0; i < text.maxId; i++) {
+                assertEquals(binary.alpha.get(i), reloaded.alpha.get(i), 0);
+            }
+        }
+        // 32位浮点的误差很小，标注结果不变
+        File floatModelFile = new File(folder.getRoot(), "model.FLOAT.bin");
+        assertSameTags(text, CRFTagger.load(floatModelFile, true, "UTF-8"), sentences);
+    }
+
+    /**
+     * 第i个权重属于哪个量化比例，0到ysize - 1是每个标签的状态特征，ysize是转移矩阵
+     */
+    private static int group(CRFTagger tagger, int i) {
+        int ysize = tagger.ysize;
+        return i >= tagger.stateStartIndex && i < tagger.stateStartIndex + ysize * ysize ? ysize : i % ysize;
+    }
+
+    /**
+     * 精度的序号不对的时候报IOException，不是数组越界
+     */
+    @Test
+    public void testUnknownPrecision() throws IOException {
+        CRFTagger text = CRFTagger.load(textModelFile, true, "UTF-8");
+        File binaryModelFile = folder.newFile("model.bin");
+        text.writeBinary(binaryModelFile);
+        RandomAccessFile file = new RandomAccessFile(binaryModelFile, "rw");
+        try {
+            // magic, 版本, xsize, ysize, maxId, stateStartIndex之后是精度
+            file.seek(24);
+            file.writeInt(Weights.Precision.values().length);
+        } finally {
+            file.close();
+        }
+        try {
+            CRFTagger.load(binaryModelFile, true, "UTF-8");
+            fail("unknown precision");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("unknown weight precision 4"));
+        }
+    }
+
+    @Test
+    public void testTagIds() throws IOException {
+        CRFTagger tagger = CRFTagger.load(textModelFile, true, "UTF-8");
+        int[] tagIds = new int[30];
+        Set<String> labels = new HashSet<String>();
+        for (List<String[]> sentence: sentences) {
+            String[] tags = tagger.tag(sentence);
+            assertEquals(tags.length, tagger.tag(sentence, tagIds));
+            for (int i = 0; i < tags.length; i++) {
+                assertEquals(tags[i], tagger.getLabel(tagIds[i]));
+                labels.add(tags[i]);
+            }
+        }
+        // 随机模型也应该用到所有标签，否则比较标注结果没有意义
+        assertEquals(LABELS.length, labels.size());
+    }
+}
@@ -0,0 +1,65 @@
+package com.nlp.segment;
+
+import com.nlp.crf.FeatureMatrix;
+import com.nlp.segment.dict.Dictionary;
+import com.nlp.segment.feature.WebdictFeature;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class FeatureExtractorTest {
+    private static final List<String> WORDS = Arrays.asList("中华", "中华人民共和国", "人民", "共和国", "成立", "华人");
+
+    private static String[] rows(FeatureExtractor featureExtractor, String senten) {
+        FeatureMatrix matrix = featureExtractor.newMatrix();
+        for (int i = 0; i < senten.length(); i++) {
+            featureExtractor.addChar(matrix, senten.charAt(i));
+        }
+        featureExtractor.addSentenceFeatures(matrix, senten);
+        String[] rows = new String[matrix.size()];
+        for (int row = 0; row < rows.length; row++) {
+            StringBuilder sb = new StringBuilder();
+            matrix.appendRow(sb, row);
+            rows[row] = sb.toString();
+        }
+        return rows;
+    }
+
+    @Test
+    public void testWebdictColumns() {
+        WebdictFeature webdictFeature = new WebdictFeature(new Dictionary(WORDS, new int[WORDS.size()]));
+        FeatureExtractor featureExtractor = new FeatureExtractor(true, null, null, null, null, null, webdictFeature);
+        String senten = "中华人民共和国成立了，ＡＢ";
+        String[] rows = rows(featureExtractor, senten);
+
+        // 列是 字符 字符类型 webdict结尾 webdict开头，和getFeature算出来的标记一样
+        int[] ends = new int[senten.length()];
+        int[] begins = new int[senten.length()];
+        webdictFeature.getFeature(senten, ends, begins);
+        String[] labels = WebdictFeature.getLabels();
+        assertEquals(senten.length(), rows.length);
+        for (int i = 0; i < rows.length; i++) {
+            String[] columns = rows[i].split("\t");
+            assertEquals(4, columns.length);
+            assertEquals(String.valueOf(senten.charAt(i)), columns[0]);
+            assertEquals(labels[ends[i]], columns[2]);
+            assertEquals(labels[begins[i]], columns[3]);
+        }
+        // 中华人民共和国是最长的词，标点和字母是O
+        assertEquals("中\tC\tN\tB", rows[0]);
+        assertEquals("国\tC\tE\tN", rows[6]);
+        assertEquals("O\tO", rows[10].substring(rows[10].indexOf('\t', 2) + 1));
+        assertEquals("O\tO", rows[11].substring(rows[11].indexOf('\t', 2) + 1));
+    }
+
+    @Test
+    public void testNoWebdictColumns() {
+        FeatureExtractor featureExtractor = new FeatureExtractor(true, null, null, null, null, null, null);
+        for (String row: rows(featureExtractor, "成立了")) {
+            assertEquals(2, row.split("\t").length);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.nlp.segment;
+
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SegmenterModelTest {
+    @Test
+    public void testDictEngineRequiresDictFilename() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("engine", "dict");
+        try {
+            new SegmenterModel(properties);
+            fail("engine=dict without dict_filename");
+        } catch (IllegalArgumentException e) {
+            assertEquals("engine=dict requires dict_filename", e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownEngine() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("engine", "hmm");
+        new SegmenterModel(properties);
+    }
+}
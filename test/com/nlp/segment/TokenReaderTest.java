@@ -0,0 +1,98 @@
+package com.nlp.segment;
+
+import com.nlp.segment.token.Token;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 用engine = dict的分词器，不需要CRF模型
+ */
+public class TokenReaderTest {
+    private static final String TEXT = "  研究生命起源，中华人民共和国成立了。\n\n大学生活  很好！研究生命的起源。"
+            + "中华人民共和国\t成立了，大学生活很好";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private WordSegmenter segmenter;
+
+    @Before
+    public void setUp() throws IOException {
+        File dictFile = folder.newFile("dict.txt");
+        FileUtils.writeLines(dictFile, "UTF-8", Arrays.asList("研究 10", "生命 10", "起源 10", "中华人民共和国 5",
+                "成立 10", "大学 10", "生活 10", "大学生 3", "很好 5"));
+        Properties properties = new Properties();
+        properties.setProperty("engine", "dict");
+        properties.setProperty("dict_filename", dictFile.getPath());
+        properties.setProperty("use_postprocess", "false");
+        segmenter = new WordSegmenter(new SegmenterModel(properties));
+    }
+
+    private List<Token> readAll(int chunkSize) throws IOException {
+        TokenReader tokenReader = new TokenReader(segmenter, new StringReader(TEXT), chunkSize);
+        List<Token> tokens = new ArrayList<Token>();
+        try {
+            Token token;
+            while ((token = tokenReader.read()) != null) {
+                tokens.add(token);
+            }
+            assertNull(tokenReader.read());
+        } finally {
+            tokenReader.close();
+        }
+        return tokens;
+    }
+
+    @Test
+    public void testOffsetsAcrossChunks() throws IOException {
+        // 块很小，输入会被切成很多块
+        for (int chunkSize = 1; chunkSize <= 12; chunkSize++) {
+            List<Token> tokens = readAll(chunkSize);
+            int previousEnd = 0;
+            int chunks = 0;
+            int chunkOffset = -1;
+            for (Token token: tokens) {
+                // 下标是相对于整个输入的
+                assertEquals(TEXT.substring(token.getBeginIndex(), token.getEndIndex()), token.toString());
+                assertTrue(token.getBeginIndex() >= previousEnd);
+                // 两个词之间只有空白
+                assertEquals("", TEXT.substring(previousEnd, token.getBeginIndex()).trim());
+                previousEnd = token.getEndIndex();
+                int offset = ((TokenReader.StreamToken) token).getChunkOffset();
+                if (offset != chunkOffset) {
+                    chunks++;
+                    chunkOffset = offset;
+                }
+            }
+            assertEquals("", TEXT.substring(previousEnd).trim());
+            assertTrue("chunk size " + chunkSize + " gave " + chunks + " chunks", chunks > 2);
+        }
+    }
+
+    @Test
+    public void testSameAsWholeText() throws IOException {
+        // 块足够大的时候只有一块，和整段切分的结果一样
+        SegmentResult result = segmenter.segmentResult(TEXT);
+        List<Token> tokens = readAll(TEXT.length());
+        assertEquals(result.size(), tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            assertEquals(result.getBegin(i), tokens.get(i).getBeginIndex());
+            assertEquals(result.getEnd(i), tokens.get(i).getEndIndex());
+        }
+    }
+}
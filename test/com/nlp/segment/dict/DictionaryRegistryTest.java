@@ -0,0 +1,94 @@
+package com.nlp.segment.dict;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DictionaryRegistryTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        DictionaryRegistry.clear();
+    }
+
+    /**
+     * 很多线程同时取同一个文件，只加载一次，拿到的是同一个实例
+     */
+    @Test
+    public void testConcurrentGet() throws Exception {
+        final File file = folder.newFile("dict.txt");
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 20000; i++) {
+            lines.add("词" + i + " " + i);
+        }
+        FileUtils.writeLines(file, "UTF-8", lines);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Dictionary>> futures = new ArrayList<Future<Dictionary>>();
+            for (int t = 0; t < 32; t++) {
+                // 编码的大小写不影响
+                final String charset = t % 2 == 0 ? "UTF-8" : "utf-8";
+                futures.add(executor.submit(new Callable<Dictionary>() {
+                    @Override
+                    public Dictionary call() throws IOException {
+                        return DictionaryRegistry.get(file.getPath(), charset);
+                    }
+                }));
+            }
+            Dictionary first = futures.get(0).get();
+            assertEquals(20000, first.size());
+            for (Future<Dictionary> future: futures) {
+                assertTrue(first == future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 加载失败的不缓存，文件改过以后重新加载
+     */
+    @Test
+    public void testReloadAfterFailureAndModification() throws Exception {
+        File file = new File(folder.getRoot(), "dict.txt");
+        try {
+            DictionaryRegistry.get(file.getPath(), "UTF-8");
+            fail("missing file");
+        } catch (IOException e) {
+            // 正常
+        }
+
+        FileUtils.writeLines(file, "UTF-8", Arrays.asList("中国 10"));
+        Dictionary dictionary = DictionaryRegistry.get(file.getPath(), "UTF-8");
+        assertTrue(dictionary.contains("中国"));
+        assertTrue(dictionary == DictionaryRegistry.get(file.getPath(), "UTF-8"));
+
+        FileUtils.writeLines(file, "UTF-8", Arrays.asList("人民 5"));
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+        Dictionary modified = DictionaryRegistry.get(file.getPath(), "UTF-8");
+        assertTrue(modified.contains("人民"));
+        assertFalse(modified.contains("中国"));
+        // 旧的实例还可以继续用
+        assertTrue(dictionary.contains("中国"));
+    }
+}
@@ -0,0 +1,173 @@
+package com.nlp.segment.dict;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DictionaryTest {
+    private static final String ALPHABET = "中国人民共和大学生abc";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String> randomWords(Random random, int count) {
+        Set<String> words = new HashSet<String>();
+        while (words.size() < count) {
+            StringBuilder sb = new StringBuilder();
+            int length = 1 + random.nextInt(5);
+            for (int k = 0; k < length; k++) {
+                sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            words.add(sb.toString());
+        }
+        return new ArrayList<String>(words);
+    }
+
+    /**
+     * 按字符范围查询和先substring再查的结果一样
+     */
+    @Test
+    public void testContainsRange() {
+        Random random = new Random(20141017);
+        List<String> words = randomWords(random, 300);
+        Set<String> wordSet = new HashSet<String>(words);
+        Dictionary dictionary = new Dictionary(words, new int[words.size()]);
+        for (int t = 0; t < 200; t++) {
+            StringBuilder sb = new StringBuilder();
+            for (int k = 0; k < 20; k++) {
+                sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            String text = sb.toString();
+            for (int begin = 0; begin <= text.length(); begin++) {
+                for (int end = begin; end <= text.length(); end++) {
+                    String word = text.substring(begin, end);
+                    assertEquals(word, wordSet.contains(word), dictionary.contains(text, begin, end));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLoadText() throws Exception {
+        File file = folder.newFile("dict.txt");
+        // 第二列不是整数的时候词频是0，合并词典一行只有一个词
+        FileUtils.writeLines(file, "UTF-8", Arrays.asList("中国 10", "中国人", "", "  人民  3  ", "大学生 n"));
+        Dictionary dictionary = Dictionary.loadText(file.getPath(), "UTF-8");
+        assertEquals(4, dictionary.size());
+        assertEquals(10, dictionary.getFrequency("中国"));
+        assertEquals(0, dictionary.getFrequency("中国人"));
+        assertEquals(3, dictionary.getFrequency("人民"));
+        assertEquals(0, dictionary.getFrequency("大学生"));
+        assertEquals(-1, dictionary.getFrequency("中"));
+        assertFalse(dictionary.contains(""));
+        assertEquals(3, dictionary.getMaxLength());
+        assertEquals(3, dictionary.getPrefixMaxLength('中'));
+        assertEquals(2, dictionary.getPrefixMaxLength('人'));
+        assertEquals(0, dictionary.getPrefixMaxLength('国'));
+        assertEquals(3, dictionary.getSuffixMaxLength('人'));
+        assertEquals(2, dictionary.getSuffixMaxLength('国'));
+        assertTrue(dictionary.contains("xx中国人yy", 2, 5));
+        assertFalse(dictionary.contains("xx中国人yy", 2, 6));
+    }
+
+    /**
+     * 二进制镜像映射回来以后和原来的词典一样
+     */
+    /**
+     * 版本1的镜像没有总词频，还是可以加载
+     */
+    @Test
+    public void testVersion1Image() throws Exception {
+        Dictionary dictionary = new Dictionary(Arrays.asList("中国", "中国人", "人民"), new int[]{10, 3, 7});
+        File image = folder.newFile("dict.bin");
+        dictionary.writeImage(image);
+        // 去掉版本号后面的总词频，改成版本1
+        byte[] bytes = FileUtils.readFileToByteArray(image);
+        ByteBuffer old = ByteBuffer.allocate(bytes.length - 8);
+        old.putInt(Dictionary.IMAGE_MAGIC).putInt(1).put(bytes, 16, bytes.length - 16);
+        File oldImage = folder.newFile("dict.v1.bin");
+        FileUtils.writeByteArrayToFile(oldImage, old.array());
+
+        Dictionary mapped = Dictionary.map(oldImage);
+        assertEquals(20, mapped.getTotalFrequency());
+        assertEquals(3, mapped.getFrequency("中国人"));
+    }
+
+    @Test
+    public void testImageRoundTrip() throws Exception {
+        Random random = new Random(20141017);
+        List<String> words = randomWords(random, 500);
+        int[] frequencies = new int[words.size()];
+        for (int i = 0; i < frequencies.length; i++) {
+            frequencies[i] = random.nextInt(100000);
+        }
+        Dictionary dictionary = new Dictionary(words, frequencies);
+        File image = folder.newFile("dict.bin");
+        dictionary.writeImage(image);
+
+        assertTrue(Dictionary.isImage(image));
+        Dictionary mapped = Dictionary.map(image);
+        assertEquals(dictionary.size(), mapped.size());
+        assertEquals(dictionary.getMaxLength(), mapped.getMaxLength());
+        assertEquals(dictionary.getTrie().sumValues(), mapped.getTrie().sumValues());
+        assertEquals(dictionary.getTrie().sumValues(), dictionary.getTotalFrequency());
+        assertEquals(dictionary.getTotalFrequency(), mapped.getTotalFrequency());
+        for (int i = 0; i < words.size(); i++) {
+            assertEquals(frequencies[i], mapped.getFrequency(words.get(i)));
+        }
+        for (char ch = 0; ch < Character.MAX_VALUE; ch++) {
+            assertEquals(dictionary.getPrefixMaxLength(ch), mapped.getPrefixMaxLength(ch));
+            assertEquals(dictionary.getSuffixMaxLength(ch), mapped.getSuffixMaxLength(ch));
+        }
+        for (String word: randomWords(random, 1000)) {
+            assertEquals(word, dictionary.getFrequency(word), mapped.getFrequency(word));
+        }
+
+        // load按文件头自动识别镜像和文本
+        assertEquals(dictionary.size(), Dictionary.load(image.getPath(), "UTF-8").size());
+        File text = folder.newFile("dict.txt");
+        FileUtils.writeLines(text, "UTF-8", Arrays.asList("中国 10"));
+        assertFalse(Dictionary.isImage(text));
+        assertEquals(10, Dictionary.load(text.getPath(), "UTF-8").getFrequency("中国"));
+    }
+
+    @Test
+    public void testEmptyImage() throws Exception {
+        File image = folder.newFile("empty.bin");
+        Dictionary.EMPTY.writeImage(image);
+        Dictionary mapped = Dictionary.map(image);
+        assertEquals(0, mapped.size());
+        assertFalse(mapped.contains("中国"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTruncatedImage() throws Exception {
+        File image = folder.newFile("dict.bin");
+        new Dictionary(Arrays.asList("中国", "人民"), new int[]{1, 2}).writeImage(image);
+        byte[] bytes = FileUtils.readFileToByteArray(image);
+        FileUtils.writeByteArrayToFile(image, Arrays.copyOf(bytes, bytes.length - 1));
+        Dictionary.map(image);
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, Dictionary.EMPTY.size());
+        assertEquals(0, Dictionary.EMPTY.getMaxLength());
+        assertFalse(Dictionary.EMPTY.contains("中国"));
+        assertFalse(Dictionary.EMPTY.contains("中国", 0, 2));
+    }
+}
@@ -0,0 +1,110 @@
+package com.nlp.segment.dict;
+
+import com.nlp.segment.postprocess.UserWordMerger;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UserDictionaryTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testMissingFileIsEmpty() throws Exception {
+        UserDictionary userDictionary = new UserDictionary(new File(folder.getRoot(), "user.txt").getPath());
+        assertEquals(0, userDictionary.get().size());
+    }
+
+    @Test
+    public void testAddWordInBackground() throws Exception {
+        UserDictionary userDictionary = new UserDictionary(new File(folder.getRoot(), "user.txt").getPath());
+        Dictionary before = userDictionary.get();
+        Future<Dictionary> future = userDictionary.addWord("大院的灰色", 3);
+        Dictionary after = future.get();
+        assertTrue(after.contains("大院的灰色"));
+        assertEquals(3, after.getFrequency("大院的灰色"));
+        assertTrue(after == userDictionary.get());
+        // 旧的词典不会被修改
+        assertFalse(before.contains("大院的灰色"));
+    }
+
+    @Test
+    public void testConcurrentAddWords() throws Exception {
+        UserDictionary userDictionary = new UserDictionary(new File(folder.getRoot(), "user.txt").getPath());
+        List<Future<Dictionary>> futures = new ArrayList<Future<Dictionary>>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(userDictionary.addWord("词" + i, i));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            // 每个词的future完成的时候，换上去的词典一定包含这个词
+            assertTrue(futures.get(i).get().contains("词" + i));
+        }
+        assertEquals(200, userDictionary.get().size());
+    }
+
+    @Test
+    public void testReloadKeepsAddedWords() throws Exception {
+        File file = new File(folder.getRoot(), "user.txt");
+        FileUtils.writeLines(file, "UTF-8", Arrays.asList("一个工业区 10"));
+        UserDictionary userDictionary = new UserDictionary(file.getPath());
+        assertTrue(userDictionary.get().contains("一个工业区"));
+        userDictionary.addWord("灰色工厂", 1).get();
+
+        FileUtils.writeLines(file, "UTF-8", Arrays.asList("深墙大院 5", "一些别的词"));
+        userDictionary.reload();
+        Dictionary dictionary = userDictionary.get();
+        assertFalse(dictionary.contains("一个工业区"));
+        assertTrue(dictionary.contains("深墙大院"));
+        assertTrue(dictionary.contains("灰色工厂"));
+        assertFalse(userDictionary.reloadIfModified());
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        File file = new File(folder.getRoot(), "user.txt");
+        FileUtils.writeLines(file, "UTF-8", Arrays.asList("一个工业区 10"));
+        UserDictionary userDictionary = new UserDictionary(file.getPath());
+        userDictionary.startWatching(10);
+        userDictionary.close();
+        // 关掉以后词典还能用，但是不再检查文件
+        FileUtils.writeLines(file, "UTF-8", Arrays.asList("深墙大院 5"));
+        Thread.sleep(100);
+        assertTrue(userDictionary.get().contains("一个工业区"));
+        try {
+            userDictionary.addWord("灰色工厂", 1);
+            fail("addWord after close");
+        } catch (IllegalStateException e) {
+            // 正常
+        }
+    }
+
+    @Test
+    public void testUserWordMerger() throws Exception {
+        UserDictionary userDictionary = new UserDictionary(new File(folder.getRoot(), "user.txt").getPath());
+        UserWordMerger merger = new UserWordMerger(userDictionary);
+        String text = "周围全是深墙大院的灰色工厂";
+        // 周围 全是 深墙 大院 的 灰色 工厂
+        int[] offsets = {0, 2, 2, 4, 4, 6, 6, 8, 8, 9, 9, 11, 11, 13};
+        assertEquals(7, merger.process(text, offsets.clone(), 7));
+
+        userDictionary.addWord("大院的灰色", 3).get();
+        // "全是深"的结尾没有和词对齐，不合并
+        userDictionary.addWord("全是深", 3).get();
+        int size = merger.process(text, offsets, 7);
+        assertEquals(5, size);
+        assertArrayEquals(new int[]{0, 2, 2, 4, 4, 6, 6, 11, 11, 13}, Arrays.copyOf(offsets, 2 * size));
+    }
+}
@@ -0,0 +1,72 @@
+package com.nlp.segment.feature;
+
+import com.nlp.segment.dict.Dictionary;
+import com.nlp.segment.token.NorToken;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class LexicalFeatureTest {
+    private static final List<String> WORDS = Arrays.asList("中华", "中华人民共和国", "人民", "共和国", "成立", "华人");
+
+    private static LexicalFeature newFeature(List<String> words) {
+        return new LexicalFeature(new Dictionary(words, new int[words.size()]));
+    }
+
+    private static List<NorToken> tokens(String context, int... lengths) {
+        List<NorToken> tokens = new ArrayList<NorToken>();
+        int begin = 0;
+        for (int length : lengths) {
+            tokens.add(new NorToken(context.substring(begin, begin + length), context, begin, begin + length,
+                    NorToken.Attr.CHWORD));
+            begin += length;
+        }
+        return tokens;
+    }
+
+    private static String rows(List<String[]> features) {
+        StringBuilder sb = new StringBuilder();
+        for (String[] row: features) {
+            sb.append(row[0]).append(',').append(row[1]).append(' ');
+        }
+        return sb.toString().trim();
+    }
+
+    @Test
+    public void testCharPath() {
+        LexicalFeature feature = newFeature(WORDS);
+        String text = "中华人民共和国成立了";
+        int[] begins = new int[text.length()];
+        int[] ends = new int[text.length()];
+        feature.getFeature(text, begins, ends);
+        assertEquals("[7, 2, 2, 0, 3, 0, 0, 2, 0, 0]", Arrays.toString(begins));
+        assertEquals("[0, 2, 2, 2, 0, 0, 7, 0, 2, 0]", Arrays.toString(ends));
+        // 每个Token一个字的时候和按字计算一样
+        List<NorToken> tokens = tokens(text, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1);
+        assertEquals(rows(feature.getFeature(text)), rows(feature.getFeature(tokens)));
+    }
+
+    /**
+     * 一个Token有好几个字的时候还是每个Token一行，词要在Token的边界上开始和结束
+     */
+    @Test
+    public void testOneRowPerToken() {
+        LexicalFeature feature = newFeature(WORDS);
+        String text = "中华人民共和国成立了";
+        // 中华 人 民 共和国 成立 了
+        List<String[]> features = feature.getFeature(tokens(text, 2, 1, 1, 3, 2, 1));
+        assertEquals(6, features.size());
+        // 中华人民共和国和人民跨了几个Token，共和国和成立只有一个Token不算，华人没有在Token的边界上
+        assertEquals("7,0 2,0 0,2 0,7 0,0 0,0", rows(features));
+    }
+
+    @Test
+    public void testEmptyDictionary() {
+        LexicalFeature feature = new LexicalFeature(Dictionary.EMPTY);
+        assertEquals("0,0 0,0", rows(feature.getFeature("中华")));
+    }
+}
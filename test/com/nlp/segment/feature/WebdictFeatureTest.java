@@ -0,0 +1,74 @@
+package com.nlp.segment.feature;
+
+import com.nlp.segment.dict.Dictionary;
+import com.nlp.segment.token.NorToken;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class WebdictFeatureTest {
+    private static final List<String> WORDS = Arrays.asList("中华", "中华人民共和国", "人民", "共和国", "成立", "华人");
+
+    private static WebdictFeature newFeature(List<String> words) {
+        return new WebdictFeature(new Dictionary(words, new int[words.size()]));
+    }
+
+    private static List<NorToken> tokens(String context, int... lengths) {
+        List<NorToken> tokens = new ArrayList<NorToken>();
+        int begin = 0;
+        for (int length : lengths) {
+            tokens.add(new NorToken(context.substring(begin, begin + length), context, begin, begin + length,
+                    NorToken.Attr.CHWORD));
+            begin += length;
+        }
+        return tokens;
+    }
+
+    private static String[] column(List<String[]> features, int column) {
+        String[] labels = new String[features.size()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = features.get(i)[column];
+        }
+        return labels;
+    }
+
+    @Test
+    public void testTokenPathMatchesCharPath() {
+        WebdictFeature feature = newFeature(WORDS);
+        String text = "中华人民共和国成立了";
+        int[] ends = new int[text.length()];
+        int[] begins = new int[text.length()];
+        feature.getFeature(text, ends, begins);
+
+        int[] lengths = new int[text.length()];
+        Arrays.fill(lengths, 1);
+        List<String[]> features = feature.getFeature(tokens(text, lengths));
+        String[] labels = WebdictFeature.getLabels();
+        for (int i = 0; i < text.length(); i++) {
+            assertEquals(labels[ends[i]], features.get(i)[0]);
+            assertEquals(labels[begins[i]], features.get(i)[1]);
+        }
+    }
+
+    @Test
+    public void testWordsEndOnTokenBounds() {
+        WebdictFeature feature = newFeature(WORDS);
+        // 只有"中华人民共和国"跨过了位置的边界，"华人"的结尾不在边界上，只占一个位置的词不算
+        List<String[]> features = feature.getFeature(tokens("中华人民共和国成立", 2, 2, 3, 2));
+        assertArrayEquals(new String[]{"N", "Y", "E", "N"}, column(features, 0));
+        assertArrayEquals(new String[]{"B", "Y", "N", "N"}, column(features, 1));
+    }
+
+    @Test
+    public void testEmptyDictionary() {
+        WebdictFeature feature = new WebdictFeature(Dictionary.EMPTY);
+        List<String[]> features = feature.getFeature(tokens("中华人民共和国", 2, 2, 3));
+        assertArrayEquals(new String[]{"N", "N", "N"}, column(features, 0));
+        assertArrayEquals(new String[]{"N", "N", "N"}, column(features, 1));
+    }
+}
@@ -0,0 +1,136 @@
+package com.nlp.segment.postprocess;
+
+import com.nlp.segment.token.NorToken;
+import com.nlp.segment.token.Token;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * 下标版本的{@link CombinePostProcessor#process(String, int[], int, int[])}
+ * 要和原来List版本的{@link CombinePostProcessor#process(List, List)}结果一样
+ */
+public class CombinePostProcessorTest {
+    private static final String[] OPTIONS = {"backward_combine", "forward_combine", "neighbor_comine", "koko_combine"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File lexiconFile;
+
+    @Before
+    public void setUp() throws IOException {
+        lexiconFile = folder.newFile("combine.txt");
+        FileUtils.writeLines(lexiconFile, "UTF-8",
+                Arrays.asList("中国", "中国人", "国人", "人民", "国人民", "中国人民", "哈中", "民哈哈"));
+    }
+
+    private CombinePostProcessor newProcessor(int flags) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("combine_lexicon_filename", lexiconFile.getPath());
+        for (int k = 0; k < OPTIONS.length; k++) {
+            properties.setProperty(OPTIONS[k], String.valueOf((flags & (1 << k)) != 0));
+        }
+        return new CombinePostProcessor(properties);
+    }
+
+    /**
+     * 用List版本处理，结果转成下标
+     */
+    private static int[] processList(CombinePostProcessor processor, String context, int[] spans) {
+        List<Token> in = new ArrayList<Token>();
+        for (int i = 0; i < spans.length; i += 2) {
+            in.add(new NorToken(context.substring(spans[i], spans[i + 1]), context,
+                    spans[i], spans[i + 1], NorToken.Attr.CHWORD));
+        }
+        List<Token> out = new ArrayList<Token>();
+        processor.process(in, out);
+        int[] result = new int[2 * out.size()];
+        for (int i = 0; i < out.size(); i++) {
+            result[2 * i] = out.get(i).getBeginIndex();
+            result[2 * i + 1] = out.get(i).getEndIndex();
+        }
+        return result;
+    }
+
+    private static int[] processOffsets(CombinePostProcessor processor, String context, int[] spans) {
+        int[] out = new int[spans.length];
+        int size = processor.process(context, spans.clone(), spans.length / 2, out);
+        return Arrays.copyOf(out, 2 * size);
+    }
+
+    private static int[] spans(int... lengths) {
+        int[] spans = new int[2 * lengths.length];
+        int begin = 0;
+        for (int i = 0; i < lengths.length; i++) {
+            spans[2 * i] = begin;
+            spans[2 * i + 1] = begin + lengths[i];
+            begin += lengths[i];
+        }
+        return spans;
+    }
+
+    @Test
+    public void testKokoCombineThreeChars() throws IOException {
+        CombinePostProcessor processor = newProcessor(1 << 3);
+        int[] spans = spans(1, 1, 1);
+        // "哈哈" "哈"
+        assertArrayEquals(new int[]{0, 2, 2, 3}, processList(processor, "哈哈哈", spans));
+        assertArrayEquals(new int[]{0, 2, 2, 3}, processOffsets(processor, "哈哈哈", spans));
+    }
+
+    @Test
+    public void testEachCombine() throws IOException {
+        String[] contexts = {"中国人民", "中国人民", "中国人民", "哈哈哈哈哈", "人民哈哈哈"};
+        int[][] spans = {spans(1, 1, 1, 1), spans(1, 2, 1), spans(2, 1, 1), spans(1, 1, 1, 1, 1), spans(1, 1, 1, 1, 1)};
+        for (int flags = 0; flags < 1 << OPTIONS.length; flags++) {
+            CombinePostProcessor processor = newProcessor(flags);
+            for (int t = 0; t < contexts.length; t++) {
+                assertArrayEquals(contexts[t] + " flags=" + flags,
+                        processList(processor, contexts[t], spans[t]),
+                        processOffsets(processor, contexts[t], spans[t]));
+            }
+        }
+    }
+
+    @Test
+    public void testRandomSentences() throws IOException {
+        String alphabet = "哈中国人民";
+        Random random = new Random(20141017);
+        for (int flags = 0; flags < 1 << OPTIONS.length; flags++) {
+            CombinePostProcessor processor = newProcessor(flags);
+            for (int t = 0; t < 2000; t++) {
+                StringBuilder sb = new StringBuilder();
+                List<Integer> lengths = new ArrayList<Integer>();
+                int count = 1 + random.nextInt(8);
+                for (int i = 0; i < count; i++) {
+                    int length = 1 + random.nextInt(3);
+                    for (int k = 0; k < length; k++) {
+                        sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                    }
+                    lengths.add(length);
+                }
+                int[] tokenLengths = new int[lengths.size()];
+                for (int i = 0; i < tokenLengths.length; i++) {
+                    tokenLengths[i] = lengths.get(i);
+                }
+                String context = sb.toString();
+                int[] spans = spans(tokenLengths);
+                assertArrayEquals(context + " " + Arrays.toString(spans) + " flags=" + flags,
+                        processList(processor, context, spans), processOffsets(processor, context, spans));
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.nlp.segment.postprocess;
+
+import com.nlp.segment.token.NorToken;
+import com.nlp.segment.token.Token;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * 没有空白的时候{@link SpanMerger}和依次调用ProcessUrl，ProcessEnglish，ProcessDigit的结果一样，
+ * 有空白的时候原来按累加的词长对齐会错位，这里固定修正以后的结果
+ */
+public class SpanMergerTest {
+    private static int[] merge(String text, int[] offsets) {
+        int[] result = offsets.clone();
+        int size = new SpanMerger().process(text, result, result.length / 2);
+        return Arrays.copyOf(result, 2 * size);
+    }
+
+    private static int[] mergeList(String text, int[] offsets) {
+        List<Token> tokens = new ArrayList<Token>();
+        for (int i = 0; i < offsets.length; i += 2) {
+            tokens.add(new NorToken(text.substring(offsets[i], offsets[i + 1]), text,
+                    offsets[i], offsets[i + 1], NorToken.Attr.UNKNOW));
+        }
+        new ProcessUrl().process(text, tokens);
+        new ProcessEnglish().process(text, tokens);
+        new ProcessDigit().process(text, tokens);
+        int[] result = new int[2 * tokens.size()];
+        for (int i = 0; i < tokens.size(); i++) {
+            result[2 * i] = tokens.get(i).getBeginIndex();
+            result[2 * i + 1] = tokens.get(i).getEndIndex();
+        }
+        return result;
+    }
+
+    /**
+     * 每个不是空白的字切成一个词
+     */
+    private static int[] singleChars(String text) {
+        int[] offsets = new int[2 * text.length()];
+        int size = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                offsets[2 * size] = i;
+                offsets[2 * size + 1] = i + 1;
+                size++;
+            }
+        }
+        return Arrays.copyOf(offsets, 2 * size);
+    }
+
+    @Test
+    public void testUrlEnglishDigit() {
+        String text = "看http://t.cn/x4好，共1,234.5元";
+        // 看 http://t.cn/x4 好 ， 共 1,234 .5 元
+        assertArrayEquals(new int[]{0, 1, 1, 15, 15, 16, 16, 17, 17, 18, 18, 23, 23, 25, 25, 26},
+                merge(text, singleChars(text)));
+    }
+
+    @Test
+    public void testSameAsListWithoutWhitespace() {
+        String[] parts = {"A", "b", ".", "．", "1", "２", ",", "和", "ll", "23", "http://x.cn/a", "好"};
+        Random random = new Random(20141017);
+        for (int t = 0; t < 20000; t++) {
+            StringBuilder sb = new StringBuilder();
+            int count = 1 + random.nextInt(10);
+            for (int i = 0; i < count; i++) {
+                sb.append(parts[random.nextInt(parts.length)]);
+            }
+            String text = sb.toString();
+            int[] offsets = singleChars(text);
+            assertArrayEquals(text, mergeList(text, offsets), merge(text, offsets));
+        }
+    }
+
+    @Test
+    public void testAfterMergedWhitespace() {
+        // "P. Poll"里面有空格，原来后面的数字会对不上，"1,234"没有合并
+        String text = "见P. Poll和1,234.5元";
+        int[] offsets = {0, 1, 1, 3, 4, 8, 8, 9, 9, 10, 10, 11, 11, 14, 14, 15, 15, 16, 16, 17};
+        assertArrayEquals(new int[]{0, 1, 1, 8, 8, 9, 9, 14, 14, 16, 16, 17}, merge(text, offsets));
+    }
+
+    @Test
+    public void testNoOverlapAfterWhitespace() {
+        // 原来的结果是 "A. P" "l" "23" "3"，丢了一个l，3重复了
+        // 现在是 "A. P" "ll" "23"
+        String text = "A. P ll23";
+        assertArrayEquals(new int[]{0, 4, 5, 7, 7, 9}, merge(text, singleChars(text)));
+    }
+}